@@ -0,0 +1,109 @@
+package shaka.ts.migrator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.javascript.jscomp.CodeConsumer;
+import com.google.javascript.jscomp.CodeGenerator;
+import com.google.javascript.jscomp.CodePrinter;
+import com.google.javascript.jscomp.CodePrinter.Builder.CodeGeneratorFactory;
+import com.google.javascript.jscomp.CodePrinter.Format;
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.SourceFile;
+import com.google.javascript.rhino.Node;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures printing a large class through {@link GentsCodeGenerator}, with the comments linked by
+ * {@link CommentLinkingPass}. The class is printed as compiled, without running the conversion
+ * passes on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CodeGeneratorBenchmark {
+  @Param({"100", "1000"})
+  public int members;
+
+  private Compiler compiler;
+  private Node script;
+  private CompilerOptions compilerOpts;
+  private CodeGeneratorFactory factory;
+
+  @Setup
+  public void setUp() {
+    Options opts = new Options();
+    compilerOpts = opts.getCompilerOptions();
+    compiler = new Compiler();
+    compiler.disableThreads();
+    compiler.compile(
+        ImmutableList.<SourceFile>of(),
+        ImmutableList.of(SourceFile.fromCode("big_class.js", largeClass(members))),
+        compilerOpts);
+    Node srcRoot = compiler.getRoot().getLastChild();
+    CommentLinkingPass commentsPass = new CommentLinkingPass(compiler);
+    commentsPass.process(compiler.getRoot().getFirstChild(), srcRoot);
+    NodeComments comments = commentsPass.getComments();
+    script = srcRoot.getFirstChild();
+    factory =
+        new CodeGeneratorFactory() {
+          @Override
+          public CodeGenerator getCodeGenerator(Format outputFormat, CodeConsumer cc) {
+            return new GentsCodeGenerator(
+                cc,
+                compilerOpts,
+                comments,
+                GentsCodeGenerator.findNewlinesBefore(script, comments),
+                ImmutableMap.of());
+          }
+        };
+  }
+
+  private static String largeClass(int members) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("goog.module('bench.LargeClass');\n\n");
+    sb.append("/** A class with many documented members. */\n");
+    sb.append("class LargeClass {\n");
+    sb.append("  constructor() {\n");
+    for (int i = 0; i < members; i++) {
+      sb.append("    /** @private {number} The value of field ").append(i).append(". */\n");
+      sb.append("    this.field").append(i).append("_ = ").append(i).append(";\n");
+    }
+    sb.append("  }\n\n");
+    for (int i = 0; i < members; i++) {
+      sb.append("  /**\n");
+      sb.append("   * Combines field ").append(i).append(" with the arguments.\n");
+      sb.append("   * @param {number} x The first operand.\n");
+      sb.append("   * @param {?string=} label\n");
+      sb.append("   * @return {number}\n");
+      sb.append("   */\n");
+      sb.append("  method").append(i).append("(x, label) {\n");
+      sb.append("    // Comments inside bodies are kept too.\n");
+      sb.append("    return label ? this.field").append(i).append("_ + x : x;\n");
+      sb.append("  }\n\n");
+    }
+    sb.append("}\n\n");
+    sb.append("exports = LargeClass;\n");
+    return sb.toString();
+  }
+
+  @Benchmark
+  public String emit() {
+    return new CodePrinter.Builder(script)
+        .setCompilerOptions(compilerOpts)
+        .setTypeRegistry(compiler.getTypeRegistry())
+        .setCodeGeneratorFactory(factory)
+        .setPrettyPrint(true)
+        .setLineBreak(true)
+        .setOutputTypes(true)
+        .build();
+  }
+}
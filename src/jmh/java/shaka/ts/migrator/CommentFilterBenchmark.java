@@ -0,0 +1,81 @@
+package shaka.ts.migrator;
+
+import com.google.javascript.jscomp.parsing.parser.trees.Comment.Type;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures {@link CommentLinkingPass#filterCommentContent} on JSDoc blocks as found in shaka. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommentFilterBenchmark {
+  private static final String METHOD_JSDOC =
+      "/**\n"
+          + " * Configures the player. Values that are not given keep their current value, and\n"
+          + " * invalid values are reported through the returned flag.\n"
+          + " *\n"
+          + " * @param {string|!Object} config The configuration, or the path of a single field.\n"
+          + " * @param {*=} value The value of the field, when a path is given.\n"
+          + " * @return {boolean} True if the configuration was valid.\n"
+          + " * @export\n"
+          + " */";
+
+  private static final String CLASS_JSDOC =
+      "/**\n"
+          + " * The main player object, responsible for loading and playing a manifest.\n"
+          + " *\n"
+          + " * @param {HTMLMediaElement=} mediaElement\n"
+          + " * @param {function(shaka.Player)=} dependencyInjector\n"
+          + " * @constructor\n"
+          + " * @struct\n"
+          + " * @extends {shaka.util.FakeEventTarget}\n"
+          + " * @implements {shaka.util.IDestroyable}\n"
+          + " * @export\n"
+          + " */";
+
+  private static final String FIELD_JSDOC =
+      "/** @private {?shaka.media.StreamingEngine} */";
+
+  private static final String TYPEDEF_JSDOC =
+      "/**\n"
+          + " * @typedef {{\n"
+          + " *   uri: string,\n"
+          + " *   start: number,\n"
+          + " *   end: ?number,\n"
+          + " *   headers: !Object.<string, string>\n"
+          + " * }}\n"
+          + " */";
+
+  private static final String LINE_COMMENT = "// goog.scope";
+
+  @Benchmark
+  public void methodJsDoc(Blackhole bh) {
+    bh.consume(CommentLinkingPass.filterCommentContent(Type.JSDOC, METHOD_JSDOC));
+  }
+
+  @Benchmark
+  public void classJsDoc(Blackhole bh) {
+    bh.consume(CommentLinkingPass.filterCommentContent(Type.JSDOC, CLASS_JSDOC));
+  }
+
+  @Benchmark
+  public void fieldJsDoc(Blackhole bh) {
+    bh.consume(CommentLinkingPass.filterCommentContent(Type.JSDOC, FIELD_JSDOC));
+  }
+
+  @Benchmark
+  public void typedefJsDoc(Blackhole bh) {
+    bh.consume(CommentLinkingPass.filterCommentContent(Type.JSDOC, TYPEDEF_JSDOC));
+  }
+
+  @Benchmark
+  public void lineComment(Blackhole bh) {
+    bh.consume(CommentLinkingPass.filterCommentContent(Type.LINE, LINE_COMMENT));
+  }
+}
@@ -0,0 +1,42 @@
+package shaka.ts.migrator;
+
+import com.google.common.io.ByteStreams;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures a whole {@link TypeScriptGenerator#generateTypeScript} run on generated corpora. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class EndToEndBenchmark {
+  @Param({"100", "1000", "10000"})
+  public int files;
+
+  private SyntheticCorpus corpus;
+
+  @Setup
+  public void setUp() {
+    corpus = new SyntheticCorpus(files, 3, 0.5, 0);
+  }
+
+  @Benchmark
+  public TypeScriptGenerator.GentsResult generateTypeScript() {
+    TypeScriptGenerator generator = new TypeScriptGenerator(new Options());
+    generator.setErrorStream(new PrintStream(ByteStreams.nullOutputStream()));
+    return generator.generateTypeScript(corpus);
+  }
+}
@@ -0,0 +1,57 @@
+package shaka.ts.migrator;
+
+import com.google.javascript.jscomp.Compiler;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures the string based prefix operations of {@link NameUtil}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NameUtilBenchmark {
+  private static final String NAME = "shaka.media.StreamingEngine.MediaState_.prototype.stream";
+
+  private NameUtil nameUtil;
+  private Set<String> namespaces;
+
+  @Setup
+  public void setUp() {
+    nameUtil = new NameUtil(new Compiler());
+    namespaces = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      namespaces.add("shaka.generated" + i + ".Class" + i);
+    }
+    namespaces.add("shaka.media");
+    namespaces.add("shaka.media.StreamingEngine");
+  }
+
+  @Benchmark
+  public void lastStepOfName(Blackhole bh) {
+    bh.consume(nameUtil.lastStepOfName(NAME));
+  }
+
+  @Benchmark
+  public void findLongestNamePrefix(Blackhole bh) {
+    bh.consume(nameUtil.findLongestNamePrefix(NAME, namespaces));
+  }
+
+  @Benchmark
+  public void findMissingNamePrefix(Blackhole bh) {
+    bh.consume(nameUtil.findLongestNamePrefix("goog.events.EventTarget.prototype", namespaces));
+  }
+
+  @Benchmark
+  public void replacePrefixInName(Blackhole bh) {
+    bh.consume(
+        nameUtil.replacePrefixInName(NAME, "shaka.media.StreamingEngine", "StreamingEngine"));
+  }
+}
@@ -0,0 +1,42 @@
+package shaka.ts.migrator;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures {@link PathUtil#getImportPath} for nearby and distant files. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PathUtilBenchmark {
+  private final PathUtil pathUtil = new PathUtil("/workspace/shaka", "google3");
+
+  @Benchmark
+  public void siblingFile(Blackhole bh) {
+    bh.consume(
+        pathUtil.getImportPath(
+            "/workspace/shaka/lib/media/streaming_engine.js",
+            "/workspace/shaka/lib/media/media_source_engine.js"));
+  }
+
+  @Benchmark
+  public void parentDirectory(Blackhole bh) {
+    bh.consume(
+        pathUtil.getImportPath(
+            "/workspace/shaka/lib/media/streaming_engine.js",
+            "/workspace/shaka/lib/player.js"));
+  }
+
+  @Benchmark
+  public void distantFile(Blackhole bh) {
+    bh.consume(
+        pathUtil.getImportPath(
+            "/workspace/shaka/ui/controls/overflow/menu.js",
+            "/workspace/shaka/lib/util/fake_event_target.js"));
+  }
+}
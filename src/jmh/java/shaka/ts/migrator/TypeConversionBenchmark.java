@@ -0,0 +1,139 @@
+package shaka.ts.migrator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.parsing.JsDocInfoParser;
+import com.google.javascript.rhino.Node;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link TypeAnnotationPass#convertTypeNodeAST} on nested union and record types. The
+ * types refer to namespaces provided by generated modules, so every type name is resolved through
+ * the symbol index and the rewrites of the converted file, half of which are imported up front.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TypeConversionBenchmark {
+  /** The number of generated modules, each providing one type. */
+  private static final int MODULES = 1000;
+  private static final String FILE = "bench.js";
+
+  @Param({"2", "4", "8"})
+  public int depth;
+
+  private TypeAnnotationPass pass;
+  private Node nestedRecord;
+  private Node wideUnion;
+  private Node functionType;
+
+  @Setup
+  public void setUp() {
+    Compiler compiler = new Compiler();
+    compiler.initOptions(new CompilerOptions());
+    NameUtil nameUtil = new NameUtil(compiler);
+    CollectModuleMetadata metadata =
+        new CollectModuleMetadata(compiler, nameUtil, ImmutableSet.of());
+    SymbolTable<String> typeRewrite = new SymbolTable<>(new SymbolInterner());
+    for (int i = 0; i < MODULES; i++) {
+      metadata.restoreFileModule(generatedModule(i));
+      if (i % 2 == 0) {
+        typeRewrite.put(FILE, typeName(i), "Type" + i);
+      }
+    }
+    pass =
+        new TypeAnnotationPass(
+            compiler,
+            new PathUtil(".", "google3"),
+            nameUtil,
+            metadata,
+            typeRewrite,
+            new NodeComments(),
+            ImmutableMap.of());
+    pass.indexSymbols();
+
+    nestedRecord = parse(nestedRecord(depth));
+    wideUnion = parse(wideUnion(8 * depth));
+    functionType =
+        parse("function(" + nestedRecord(depth) + ", ?string=, ...number): " + wideUnion(depth));
+  }
+
+  private static String typeName(int i) {
+    return "shaka.generated.Type" + i;
+  }
+
+  /** Returns the metadata of a goog.provide file declaring {@code typeName(i)}. */
+  private static IncrementalCache.ModuleRecord generatedModule(int i) {
+    IncrementalCache.ModuleRecord record = new IncrementalCache.ModuleRecord();
+    record.file = "generated/type" + i + ".js";
+    record.jsNamespaces = ImmutableList.of(typeName(i));
+    record.namespaceHasDefaultExport = ImmutableMap.of();
+    record.providesObjectChildren = ImmutableMap.of(typeName(i), ImmutableList.of());
+    record.exportedNamespacesToSymbols = ImmutableMap.of(typeName(i), "Type" + i);
+    record.importedNamespacesToSymbols = ImmutableMap.of(typeName(i), "Type" + i);
+    return record;
+  }
+
+  /** Parses a type expression as if it was written in {@link #FILE}. */
+  private static Node parse(String type) {
+    Node root = JsDocInfoParser.parseTypeString(type);
+    setSourceFile(root);
+    return root;
+  }
+
+  private static void setSourceFile(Node n) {
+    n.setSourceFileForTesting(FILE);
+    for (Node child = n.getFirstChild(); child != null; child = child.getNext()) {
+      setSourceFile(child);
+    }
+  }
+
+  /** Returns a record whose fields are unions that contain the record one level deeper. */
+  private static String nestedRecord(int depth) {
+    String type = "string";
+    for (int i = 0; i < depth; i++) {
+      type =
+          "{id: number, name: ?string, owner: !" + typeName(i) + ".Options, "
+              + "child: (" + type + "|!Array<" + type + ">|null), "
+              + "extra: !Object<string, (boolean|undefined)>}";
+    }
+    return type;
+  }
+
+  private static String wideUnion(int width) {
+    List<String> members = new ArrayList<>();
+    for (int i = 0; i < width; i++) {
+      members.add(i % 2 == 0 ? typeName(i) : "?Array<" + typeName(i) + ">");
+    }
+    return "(" + String.join("|", members) + "|null|undefined)";
+  }
+
+  @Benchmark
+  public void nestedRecord(Blackhole bh) {
+    bh.consume(pass.convertTypeNodeAST(nestedRecord));
+  }
+
+  @Benchmark
+  public void wideUnion(Blackhole bh) {
+    bh.consume(pass.convertTypeNodeAST(wideUnion));
+  }
+
+  @Benchmark
+  public void functionType(Blackhole bh) {
+    bh.consume(pass.convertTypeNodeAST(functionType));
+  }
+}
@@ -1,9 +1,13 @@
 package shaka.ts.migrator;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Preconditions.checkState;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
 import com.google.javascript.jscomp.AbstractCompiler;
 import com.google.javascript.jscomp.CompilerPass;
 import com.google.javascript.jscomp.JSError;
@@ -11,10 +15,13 @@ import com.google.javascript.jscomp.NodeTraversal;
 import com.google.javascript.jscomp.NodeUtil;
 import com.google.javascript.rhino.JSDocInfo;
 import com.google.javascript.rhino.Node;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nullable;
@@ -22,6 +29,21 @@ import javax.annotation.Nullable;
 /**
  * Preprocesses all source and library files to build a mapping between Closure namespaces and file
  * based modules.
+ *
+ * <p>The metadata is only changed through this class, and only until it is frozen:
+ *
+ * <ul>
+ *   <li>this pass collects the modules of the compiled files;
+ *   <li>{@link #restoreFileModule} adds the modules of files compiled elsewhere, before this pass
+ *       runs for {@link IncrementalConverter}, and after it and again after {@link
+ *       TypeConversionPass} for {@link ShardedConverter};
+ *   <li>{@link TypeConversionPass} adds the aliases of class inner typedefs with {@link
+ *       #addTypeAlias}.
+ * </ul>
+ *
+ * <p>{@link NamespaceConversionPass} and {@link ModuleRenameLogger} only read it. {@link
+ * TypeAnnotationPass} freezes it into a {@link Snapshot}, which later passes share without copying.
+ * No module can be added or changed after that.
  */
 public final class CollectModuleMetadata extends AbstractTopLevelCallback implements CompilerPass {
 
@@ -31,30 +53,119 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
   private final Set<String> filesToConvert;
   private final Map<String, FileModule> fileToModule = new LinkedHashMap<>();
   private final Map<String, FileModule> namespaceToModule = new LinkedHashMap<>();
+  /** filename -> namespaces the file goog.requires, whether or not it declares a module */
+  private final SetMultimap<String, String> requiredNamespaces = LinkedHashMultimap.create();
+  @Nullable private Snapshot snapshot = null;
+
+  /**
+   * The module metadata of a compilation, frozen once it is complete. The indexes are built once
+   * and never change, so any pass or worker thread can read them without copying or locking.
+   */
+  static final class Snapshot {
+    /** file name -> module */
+    final ImmutableMap<String, FileModule> files;
+    /** provided namespace -> module */
+    final ImmutableMap<String, FileModule> namespaces;
+    /** every symbol in the compilation unit -> module */
+    final ImmutableMap<String, FileModule> symbols;
+    /** Index of the keys of {@code symbols}, for longest prefix lookups. Never modified. */
+    final NamespaceTrie<FileModule> symbolIndex;
+
+    private Snapshot(Map<String, FileModule> files, Map<String, FileModule> namespaces) {
+      this.files = ImmutableMap.copyOf(files);
+      this.namespaces = ImmutableMap.copyOf(namespaces);
+      Map<String, FileModule> symbols = new LinkedHashMap<>();
+      for (FileModule module : files.values()) {
+        for (String symbol : module.importedNamespacesToSymbols.keySet()) {
+          symbols.put(symbol, module);
+        }
+      }
+      this.symbols = ImmutableMap.copyOf(symbols);
+      this.symbolIndex = new NamespaceTrie<>();
+      for (Map.Entry<String, FileModule> e : this.symbols.entrySet()) {
+        symbolIndex.put(e.getKey(), e.getValue());
+      }
+    }
+  }
 
   Map<String, FileModule> getFileMap() {
-    return fileToModule;
+    return snapshot != null ? snapshot.files : fileToModule;
   }
 
   void addFileMap(String filename) {
+    checkNotFrozen();
     if (!fileToModule.containsKey(filename)) {
       fileToModule.put(filename, new FileModule(filename, false));
     }
   }
 
   Map<String, FileModule> getNamespaceMap() {
-    return namespaceToModule;
+    return snapshot != null ? snapshot.namespaces : namespaceToModule;
+  }
+
+  /** Returns the namespaces {@code file} goog.requires, in their order. */
+  Set<String> getRequiredNamespaces(String file) {
+    return requiredNamespaces.get(file);
+  }
+
+  /**
+   * Makes {@code typeName} in {@code file} resolve to the local name {@code alias}. Does nothing
+   * if the file has no module.
+   */
+  void addTypeAlias(String file, String typeName, String alias) {
+    checkNotFrozen();
+    FileModule module = fileToModule.get(file);
+    if (module != null) {
+      module.importedNamespacesToSymbols.put(typeName, alias);
+    }
   }
 
-  /** Returns a map from all symbols in the compilation unit to their respective modules */
-  Map<String, FileModule> getSymbolMap() {
-    Map<String, FileModule> out = new LinkedHashMap<>();
-    for (FileModule module : fileToModule.values()) {
-      for (String symbol : module.importedNamespacesToSymbols.keySet()) {
-        out.put(symbol, module);
+  /**
+   * Freezes the metadata, on the first call, and returns the snapshot. Called once every pass
+   * that writes module metadata has run, see the class comment.
+   */
+  Snapshot freeze() {
+    if (snapshot == null) {
+      for (FileModule module : fileToModule.values()) {
+        module.freeze();
       }
+      for (FileModule module : namespaceToModule.values()) {
+        module.freeze();
+      }
+      snapshot = new Snapshot(fileToModule, namespaceToModule);
+    }
+    return snapshot;
+  }
+
+  /** Records the namespace of a {@code goog.require} call, if it is a literal. */
+  private void maybeAddRequiredNamespace(String filename, Node call) {
+    if (call.getSecondChild() != null
+        && call.getSecondChild().isString()) {
+      requiredNamespaces.put(filename, call.getSecondChild().getString());
+    }
+  }
+
+  private void checkNotFrozen() {
+    checkState(snapshot == null, "Module metadata is frozen");
+  }
+
+  /**
+   * Registers the module of a file that is not part of this compilation, using the metadata it
+   * contributed to a previous run.
+   */
+  void restoreFileModule(IncrementalCache.ModuleRecord record) {
+    checkNotFrozen();
+    FileModule module = new FileModule(record.file, record.isGoogModule);
+    module.hasImports = record.hasImports;
+    module.jsNamespaces.addAll(record.jsNamespaces);
+    module.namespaceHasDefaultExport.putAll(record.namespaceHasDefaultExport);
+    for (Map.Entry<String, List<String>> entry : record.providesObjectChildren.entrySet()) {
+      module.providesObjectChildren.put(entry.getKey(), new LinkedHashSet<>(entry.getValue()));
+      namespaceToModule.put(entry.getKey(), module);
     }
-    return out;
+    module.exportedNamespacesToSymbols.putAll(record.exportedNamespacesToSymbols);
+    module.importedNamespacesToSymbols.putAll(record.importedNamespacesToSymbols);
+    fileToModule.put(record.file, module);
   }
 
   CollectModuleMetadata(AbstractCompiler compiler, NameUtil nameUtil, Set<String> filesToConvert) {
@@ -65,6 +176,7 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
 
   @Override
   public void process(Node externs, Node root) {
+    checkNotFrozen();
     NodeTraversal.traverse(compiler, root, this);
   }
 
@@ -74,10 +186,13 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
     @Nullable FileModule module = fileToModule.get(filename);
 
     // const A = goog.require('path.to.A');
-    if (module != null && (n.isConst() || n.isLet() || n.isVar())) {
+    if (n.isConst() || n.isLet() || n.isVar()) {
       @Nullable Node rhs = n.getFirstChild().getLastChild();
       if (rhs != null && rhs.isCall() && rhs.getFirstChild().matchesQualifiedName("goog.require")) {
-        module.reportImport();
+        if (module != null) {
+          module.reportImport();
+        }
+        maybeAddRequiredNamespace(filename, rhs);
       }
     }
 
@@ -113,6 +228,7 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
             if (module != null) {
               module.reportImport();
             }
+            maybeAddRequiredNamespace(filename, child);
             break;
           default:
             break;
@@ -204,7 +320,7 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
      * true if the goog.provide namespace/goog.module module's clutz generated .d.ts will have a
      * default export.
      */
-    Map<String, Boolean> namespaceHasDefaultExport = new HashMap<>();
+    private Map<String, Boolean> namespaceHasDefaultExport = new HashMap<>();
 
     /**
      * Map from each provided namespace to all exported subproperties. Note that only namespaces
@@ -223,10 +339,10 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
      *
      * Would result in providesObjectChildren['A.B'] = {'C'}
      */
-    final Map<String, Set<String>> providesObjectChildren = new LinkedHashMap<>();
+    private Map<String, Set<String>> providesObjectChildren = new LinkedHashMap<>();
 
     /** Map of the goog.provided namespace to the node assigned to it. */
-    private final Map<String, Node> googProvideNamespaceToNode = new LinkedHashMap<>();
+    private Map<String, Node> googProvideNamespaceToNode = new LinkedHashMap<>();
 
     /**
      * Map from the fully qualified name being exported to the exported symbol. For example,
@@ -245,7 +361,7 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
      *    exportedNamespacesToSymbols['exports.C'] = 'C'
      *  </pre>
      */
-    final Map<String, String> exportedNamespacesToSymbols = new LinkedHashMap<>();
+    private Map<String, String> exportedNamespacesToSymbols = new LinkedHashMap<>();
 
     /**
      * Map from the fully qualified name that would be imported to the exported symbol. For example,
@@ -264,7 +380,9 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
      *    importedNamespacesToSymbols['A.B.C'] = 'C'
      *  </pre>
      */
-    final Map<String, String> importedNamespacesToSymbols = new LinkedHashMap<>();
+    private Map<String, String> importedNamespacesToSymbols = new LinkedHashMap<>();
+
+    private boolean frozen = false;
 
     FileModule(String file, boolean isGoogModule) {
       this.file = file;
@@ -272,11 +390,71 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
       this.isJsLibrary = !filesToConvert.contains(file);
     }
 
+    /** Replaces the collections with immutable copies. Modules are frozen with their metadata. */
+    private void freeze() {
+      if (frozen) {
+        return;
+      }
+      frozen = true;
+      jsNamespaces = ImmutableSet.copyOf(jsNamespaces);
+      namespaceHasDefaultExport = ImmutableMap.copyOf(namespaceHasDefaultExport);
+      ImmutableMap.Builder<String, Set<String>> children = ImmutableMap.builder();
+      for (Map.Entry<String, Set<String>> entry : providesObjectChildren.entrySet()) {
+        children.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+      }
+      providesObjectChildren = children.build();
+      // Only needed while exports are collected; drops the references to the AST.
+      googProvideNamespaceToNode = ImmutableMap.of();
+      exportedNamespacesToSymbols = ImmutableMap.copyOf(exportedNamespacesToSymbols);
+      importedNamespacesToSymbols = ImmutableMap.copyOf(importedNamespacesToSymbols);
+    }
+
+    /** Returns the metadata this file contributed, in a form that can be persisted. */
+    IncrementalCache.ModuleRecord toRecord() {
+      IncrementalCache.ModuleRecord record = new IncrementalCache.ModuleRecord();
+      record.file = file;
+      record.isGoogModule = isGoogModule;
+      record.hasImports = hasImports;
+      record.jsNamespaces = new ArrayList<>(jsNamespaces);
+      record.namespaceHasDefaultExport = new LinkedHashMap<>(namespaceHasDefaultExport);
+      record.providesObjectChildren = new LinkedHashMap<>();
+      for (Map.Entry<String, Set<String>> entry : providesObjectChildren.entrySet()) {
+        record.providesObjectChildren.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+      }
+      record.exportedNamespacesToSymbols = new LinkedHashMap<>(exportedNamespacesToSymbols);
+      record.importedNamespacesToSymbols = new LinkedHashMap<>(importedNamespacesToSymbols);
+      return record;
+    }
+
     /** Returns if the import statement for this file should use the old 'goog:' namespace syntax */
     boolean shouldUseOldSyntax() {
       return isJsLibrary;
     }
 
+    /** Returns the exported symbols, see {@link #exportedNamespacesToSymbols}. */
+    Map<String, String> getExportedNamespacesToSymbols() {
+      return Collections.unmodifiableMap(exportedNamespacesToSymbols);
+    }
+
+    /** Returns the symbols other files import, see {@link #importedNamespacesToSymbols}. */
+    Map<String, String> getImportedNamespacesToSymbols() {
+      return Collections.unmodifiableMap(importedNamespacesToSymbols);
+    }
+
+    /**
+     * Returns the exported subproperties of a provided namespace, see {@link
+     * #providesObjectChildren}, or an empty set if the module does not provide it.
+     */
+    Set<String> getProvidesObjectChildren(String namespace) {
+      Set<String> children = providesObjectChildren.get(namespace);
+      return children == null ? ImmutableSet.of() : Collections.unmodifiableSet(children);
+    }
+
+    /** Returns if the clutz generated .d.ts of the namespace will have a default export. */
+    boolean hasDefaultExport(String namespace) {
+      return namespaceHasDefaultExport.getOrDefault(namespace, false);
+    }
+
     /** Returns if the file actually exports any symbols. */
     boolean hasExports() {
       return !exportedNamespacesToSymbols.isEmpty();
@@ -284,6 +462,7 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
 
     /** Records that the module has at least one import. */
     void reportImport() {
+      checkNotFrozen();
       this.hasImports = true;
     }
 
@@ -297,6 +476,7 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
      * qualified name.
      */
     void registerNamespaceToGlobalScope(String namespace) {
+      checkNotFrozen();
       providesObjectChildren.put(namespace, new LinkedHashSet<String>());
       if (isJsLibrary) {
         maybeAddExport(NodeUtil.newQName(compiler, namespace));
@@ -309,6 +489,7 @@ public final class CollectModuleMetadata extends AbstractTopLevelCallback implem
      * Attempts to export the name exportsName. Does nothing if exportsName is an invalid export.
      */
     void maybeAddExport(Node exportsName) {
+      checkNotFrozen();
       if (isGoogModule) {
         maybeAddGoogExport(exportsName);
       } else {
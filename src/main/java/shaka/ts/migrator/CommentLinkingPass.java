@@ -13,7 +13,10 @@ import com.google.javascript.rhino.Node;
 import com.google.javascript.rhino.Token;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 /** Links comments directly to the AST to preserve locations in file */
@@ -22,42 +25,6 @@ public final class CommentLinkingPass implements CompilerPass {
   private static final Pattern EMPTY_COMMENT_REGEX =
       Pattern.compile("^\\s*(\\/\\/|\\/\\*(\\s|\\*)*\\*\\/)\\s*$");
 
-  /** Regex fragment that optionally matches the beginning of a JSDOC line. */
-  private static final String BEGIN_JSDOC_LINE = "(?<block>[ \t]*\\*[ \t]*)?";
-
-  /** Regex fragment to optionally match end-of-line */
-  private static final String EOL = "(?<eol>[ \t]*\n)?";
-
-  /**
-   * These RegExes delete everything except for the `block` (see BEGIN_JSDOC_LINE) and `keep`
-   * capture groups. These RegExes must contain a `keep` group.
-   */
-  private static final Pattern[] JSDOC_REPLACEMENTS_WITH_KEEP = {
-    // Removes @param and @return if there is no description
-    Pattern.compile(
-        BEGIN_JSDOC_LINE + "@param[ \t]*(\\{.*\\})[ \t]*[\\w\\$]+[ \t]*(?<keep>\\*\\/|\n)"),
-    Pattern.compile(BEGIN_JSDOC_LINE + "@returns?[ \t]*(\\{.*\\})[ \t]*(?<keep>\\*\\/|\n)"),
-    Pattern.compile(BEGIN_JSDOC_LINE + "(?<keep>@(param|returns?))[ \t]*(\\{.*\\})"),
-    // Remove type annotation from @export
-    Pattern.compile(BEGIN_JSDOC_LINE + "(?<keep>@export)[ \t]*(\\{.*\\})"),
-  };
-
-  /**
-   * These RegExes delete everything that's matched by them, they must begin with BEGIN_JSDOC_LINE
-   * and finish with EOL.
-   */
-  private static final Pattern[] JSDOC_REPLACEMENTS_NO_KEEP = {
-    Pattern.compile(BEGIN_JSDOC_LINE + "@(extends|implements|type)[ \t]*(\\{[^@]*\\})[ \t]*" + EOL),
-    Pattern.compile(BEGIN_JSDOC_LINE + "@(constructor|interface|record)[ \t]*" + EOL),
-    Pattern.compile(
-        BEGIN_JSDOC_LINE
-            + "@(private|protected|public|package|const|enum)[ \t]*(\\{.*\\})?[ \t]*"
-            + EOL),
-    Pattern.compile(BEGIN_JSDOC_LINE + "@suppress[ \t]*\\{extraRequire\\}[ \t]*" + EOL),
-    // Remove @typedef if there is no description.
-    Pattern.compile(BEGIN_JSDOC_LINE + "@typedef[ \t]*(\\{.*\\})" + EOL, Pattern.DOTALL)
-  };
-
   private static final Pattern[] COMMENT_REPLACEMENTS = {Pattern.compile("//\\s*goog.scope\\s*")};
 
   /**
@@ -76,10 +43,21 @@ public final class CommentLinkingPass implements CompilerPass {
 
   private final Compiler compiler;
   private final NodeComments nodeComments;
+  /** Number of scripts linked concurrently. */
+  private final int threads;
 
   CommentLinkingPass(Compiler compiler) {
+    this(compiler, 1);
+  }
+
+  /**
+   * With more than one thread, scripts are linked concurrently, each into its own {@link
+   * NodeComments} that is merged into {@link #getComments} in script order.
+   */
+  CommentLinkingPass(Compiler compiler, int threads) {
     this.compiler = compiler;
     this.nodeComments = new NodeComments();
+    this.threads = threads;
   }
 
   public NodeComments getComments() {
@@ -88,15 +66,82 @@ public final class CommentLinkingPass implements CompilerPass {
 
   @Override
   public void process(Node externs, Node root) {
+    List<Node> scripts = new ArrayList<>();
     for (Node script : root.children()) {
       if (script.isScript()) {
-        // Note: this doesn't actually copy the list since the underlying list is already an
-        // immutable list.
-        ImmutableList<Comment> comments =
-            ImmutableList.copyOf(compiler.getComments(script.getSourceFileName()));
-        NodeTraversal.traverse(compiler, script, new LinkCommentsForOneFile(comments));
+        scripts.add(script);
+      }
+    }
+    int commentCount = 0;
+    for (Node script : scripts) {
+      commentCount += compiler.getComments(script.getSourceFileName()).size();
+    }
+    // Comments are linked in groups, so there are never more commented nodes than comments.
+    nodeComments.presize(commentCount);
+    if (threads <= 1 || scripts.size() <= 1) {
+      for (Node script : scripts) {
+        linkScript(script, nodeComments);
+      }
+      return;
+    }
+
+    // Each script only changes its own subtree, so scripts can be linked independently.
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<NodeComments>> linked = new ArrayList<>();
+      for (Node script : scripts) {
+        linked.add(
+            pool.submit(
+                () -> {
+                  NodeComments scriptComments =
+                      new NodeComments(compiler.getComments(script.getSourceFileName()).size());
+                  linkScript(script, scriptComments);
+                  return scriptComments;
+                }));
+      }
+      for (Future<NodeComments> scriptComments : linked) {
+        nodeComments.addAll(scriptComments.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while linking comments", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private void linkScript(Node script, NodeComments scriptComments) {
+    // Note: this doesn't actually copy the list since the underlying list is already an
+    // immutable list.
+    ImmutableList<Comment> comments =
+        ImmutableList.copyOf(compiler.getComments(script.getSourceFileName()));
+    NodeTraversal.traverse(compiler, script, new LinkCommentsForOneFile(comments, scriptComments));
+  }
+
+  /** Removes unneeded tags and markers from the comment. */
+  static String filterCommentContent(Type type, String comment) {
+    if (type == Type.JSDOC) {
+      comment = JsDocScanner.filter(comment);
+    } else {
+      for (Pattern p : COMMENT_REPLACEMENTS) {
+        comment = p.matcher(comment).replaceAll("");
       }
     }
+
+    return isWhitespaceOnly(comment) ? "" : comment;
+  }
+
+  /** Returns if the comment only contains whitespace. */
+  private static boolean isWhitespaceOnly(String comment) {
+    return EMPTY_COMMENT_REGEX.matcher(comment).find();
   }
 
   /**
@@ -109,13 +154,16 @@ public final class CommentLinkingPass implements CompilerPass {
   private class LinkCommentsForOneFile implements Callback {
     /** List of all comments in the file */
     private final ImmutableList<Comment> comments;
+    /** Where the comments of this file are linked. */
+    private final NodeComments nodeComments;
     /** Collects of all comments that are grouped together. */
     private List<Comment> commentBuffer = new ArrayList<>();
 
     private int lastCommentIndex = 0;
 
-    private LinkCommentsForOneFile(ImmutableList<Comment> comments) {
+    private LinkCommentsForOneFile(ImmutableList<Comment> comments, NodeComments nodeComments) {
       this.comments = comments;
+      this.nodeComments = nodeComments;
       if (!comments.isEmpty()) {
         commentBuffer.add(comments.get(0));
       }
@@ -179,47 +227,6 @@ public final class CommentLinkingPass implements CompilerPass {
       commentBuffer.clear();
     }
 
-    /** Removes unneeded tags and markers from the comment. */
-    private String filterCommentContent(Type type, String comment) {
-      if (type == Type.JSDOC) {
-        for (Pattern p : JSDOC_REPLACEMENTS_WITH_KEEP) {
-          Matcher m = p.matcher(comment);
-          if (m.find() && m.group("keep") != null && m.group("keep").trim().length() > 0) {
-            // keep documentation, if any
-            comment = m.replaceAll("${block}${keep}");
-          } else {
-            // nothing to keep, remove the line
-            comment = m.replaceAll("");
-          }
-        }
-
-        for (Pattern p : JSDOC_REPLACEMENTS_NO_KEEP) {
-          Matcher m = p.matcher(comment);
-          if (m.find()) {
-            if (m.group("eol") != null && m.group("eol").trim().length() == 0) {
-              // if the end of the line was matched, then there's nothing to keep, remove the line
-              comment = m.replaceAll("");
-            } else {
-              // If something is still left on the line after the match was removed, keep
-              // `block` around since it matches the comment * for the beginning of the line.
-              comment = p.matcher(comment).replaceAll("${block}");
-            }
-          }
-        }
-      } else {
-        for (Pattern p : COMMENT_REPLACEMENTS) {
-          comment = p.matcher(comment).replaceAll("");
-        }
-      }
-
-      return isWhitespaceOnly(comment) ? "" : comment;
-    }
-
-    /** Returns if the comment only contains whitespace. */
-    private boolean isWhitespaceOnly(String comment) {
-      return EMPTY_COMMENT_REGEX.matcher(comment).find();
-    }
-
     /** Returns a new comment attached to an empty node. */
     private Node newFloatingCommentFromBuffer() {
       Node c = new Node(Token.EMPTY);
@@ -0,0 +1,257 @@
+package shaka.ts.migrator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.javascript.jscomp.SourceFile;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Converts files on request in a long running process, so that small conversions do not pay for
+ * JVM startup, class loading and JIT warm-up every time.
+ *
+ * <p>Requests and responses are single line JSON objects, read from stdin or from the connections
+ * of a Unix domain socket. When serving stdin, anything else written to {@code System.out} goes to
+ * stderr instead, so it cannot corrupt the responses. The {@link Options} are shared by all
+ * requests and extern files are only read again when they change on disk. Everything else,
+ * including the compiler, the {@link GentsErrorManager} and the passes, is created anew by a {@link
+ * TypeScriptGenerator} for every request, so no state leaks from one conversion into the next.
+ *
+ * <p>Parsed extern ASTs are not reused: Closure parses every input of a compilation and the
+ * conversion changes the trees it compiled.
+ */
+final class ConversionDaemon {
+  /** A conversion request. */
+  static final class Request {
+    /** Echoed in the response, so clients can match responses to requests. */
+    @Nullable String id;
+    /** Files to convert. */
+    List<String> convert = new ArrayList<>();
+    /** Additional files that are compiled with the converted files but not converted. */
+    List<String> sources = new ArrayList<>();
+    List<String> externs = new ArrayList<>();
+    boolean declareOnly;
+    /** Writes each {@code .ts} file next to its input instead of returning the code. */
+    boolean write;
+    /** Returns the module rewrite log in {@link Response#moduleRewriteLog}. */
+    boolean log;
+    /** Stops the daemon after responding. */
+    boolean shutdown;
+  }
+
+  /** The response to a {@link Request}. */
+  static final class Response {
+    @Nullable String id;
+    /** The generated code by path, without extension, when the request did not write files. */
+    Map<String, String> outputs = new LinkedHashMap<>();
+    int written;
+    int unchanged;
+    String moduleRewriteLog = "";
+    /** The compiler errors and warnings, as they would be printed to stderr. */
+    String diagnostics = "";
+    int errorCount;
+    /** Set when the request could not be processed. */
+    @Nullable String failure;
+  }
+
+  /** A file read from disk, kept until it changes. */
+  private static final class CachedFile {
+    final long size;
+    final long modifiedMillis;
+    final SourceFile sourceFile;
+
+    CachedFile(long size, long modifiedMillis, SourceFile sourceFile) {
+      this.size = size;
+      this.modifiedMillis = modifiedMillis;
+      this.sourceFile = sourceFile;
+    }
+  }
+
+  private final Options opts;
+  private final PathUtil pathUtil;
+  private final Gson gson = new Gson();
+  private final Map<Path, CachedFile> externs = new HashMap<>();
+  private boolean shutdown = false;
+
+  ConversionDaemon(Options opts) {
+    this.opts = opts;
+    this.pathUtil = new PathUtil(opts.root, opts.absolutePathPrefix);
+  }
+
+  /**
+   * Answers requests read from stdin until it ends or a request asks to shut down. Responses are
+   * the only output on stdout: {@code System.out} is redirected to stderr while serving.
+   */
+  void serveStdin() throws IOException {
+    PrintStream stdout = System.out;
+    System.setOut(System.err);
+    try {
+      serve(
+          new InputStreamReader(System.in, UTF_8),
+          new BufferedWriter(new OutputStreamWriter(stdout, UTF_8)));
+    } finally {
+      System.setOut(stdout);
+    }
+  }
+
+  /** Answers requests read from {@code in} until it ends or a request asks to shut down. */
+  void serve(Reader in, Writer out) throws IOException {
+    BufferedReader reader = new BufferedReader(in);
+    String line;
+    while (!shutdown && (line = reader.readLine()) != null) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      out.write(gson.toJson(handle(line)));
+      out.write('\n');
+      out.flush();
+    }
+  }
+
+  /**
+   * Answers requests from the connections of a Unix domain socket, one connection at a time, until
+   * a request asks to shut down.
+   */
+  void serve(Path socket) throws IOException {
+    Files.deleteIfExists(socket);
+    try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      server.bind(UnixDomainSocketAddress.of(socket));
+      while (!shutdown) {
+        try (SocketChannel connection = server.accept()) {
+          serve(Channels.newReader(connection, UTF_8), Channels.newWriter(connection, UTF_8));
+        }
+      }
+    } finally {
+      Files.deleteIfExists(socket);
+    }
+  }
+
+  private Response handle(String line) {
+    Request request;
+    try {
+      request = gson.fromJson(line, Request.class);
+    } catch (JsonParseException e) {
+      Response response = new Response();
+      response.failure = "Malformed request: " + e.getMessage();
+      return response;
+    }
+    if (request == null) {
+      Response response = new Response();
+      response.failure = "Malformed request: " + line;
+      return response;
+    }
+    Response response;
+    try {
+      response = convert(request);
+    } catch (IOException | RuntimeException e) {
+      response = new Response();
+      response.failure = e.toString();
+    }
+    response.id = request.id;
+    shutdown = request.shutdown;
+    return response;
+  }
+
+  private Response convert(Request request) throws IOException {
+    Response response = new Response();
+    if (request.convert.isEmpty()) {
+      return response;
+    }
+
+    Set<String> filesToConvert = new LinkedHashSet<>();
+    List<SourceFile> sourceFiles = new ArrayList<>();
+    Map<String, File> inputFileMap = new HashMap<>();
+    Set<String> names = new LinkedHashSet<>(request.convert);
+    names.addAll(request.sources);
+    for (String name : names) {
+      Path path = Paths.get(name);
+      sourceFiles.add(
+          SourceFile.fromCode(
+              name, Main.getFileText(path, new String(Files.readAllBytes(path), UTF_8))));
+      inputFileMap.put(pathUtil.getFilePathWithoutExtension(name), path.toFile());
+    }
+    filesToConvert.addAll(request.convert);
+    List<SourceFile> externFiles = new ArrayList<>();
+    for (String extern : request.externs) {
+      externFiles.add(loadExtern(Paths.get(extern)));
+    }
+
+    // A new generator per request: it owns the compiler, the error manager and all passes.
+    TypeScriptGenerator gents = new TypeScriptGenerator(opts);
+    ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+    PrintStream errStream = new PrintStream(diagnostics, true, UTF_8);
+    gents.setErrorStream(errStream);
+    gents.setGenerateModuleRewriteLog(request.log);
+
+    TypeScriptGenerator.GentsResult result;
+    if (request.write) {
+      OutputWriter writer =
+          new OutputWriter(null, Runtime.getRuntime().availableProcessors(), null);
+      OutputSink sink =
+          (path, code) -> writer.add(Main.getOutputFile(path, inputFileMap), code);
+      try {
+        result =
+            gents.generateTypeScript(
+                filesToConvert, sourceFiles, externFiles, request.declareOnly, sink);
+      } finally {
+        // Also stops the writer's threads when the conversion failed.
+        writer.finish();
+      }
+      response.written = writer.getWritten();
+      response.unchanged = writer.getUnchanged();
+    } else {
+      result =
+          gents.generateTypeScript(filesToConvert, sourceFiles, externFiles, request.declareOnly);
+      response.outputs = result.sourceFileMap;
+    }
+    errStream.flush();
+    response.moduleRewriteLog = result.moduleRewriteLog;
+    response.diagnostics = diagnostics.toString(UTF_8);
+    response.errorCount = gents.getErrorCount();
+    return response;
+  }
+
+  /** Returns the extern, reading it again only when its size or modification time changed. */
+  private SourceFile loadExtern(Path path) throws IOException {
+    Path key = path.toAbsolutePath().normalize();
+    BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+    long modifiedMillis = attributes.lastModifiedTime().toMillis();
+    CachedFile cached = externs.get(key);
+    if (cached == null
+        || cached.size != attributes.size()
+        || cached.modifiedMillis != modifiedMillis) {
+      SourceFile sourceFile =
+          SourceFile.fromCode(path.toString(), new String(Files.readAllBytes(key), UTF_8));
+      cached = new CachedFile(attributes.size(), modifiedMillis, sourceFile);
+      externs.put(key, cached);
+    }
+    return cached.sourceFile;
+  }
+}
@@ -0,0 +1,153 @@
+package shaka.ts.migrator;
+
+import com.google.gson.GsonBuilder;
+import com.google.javascript.rhino.Node;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Records the wall time, CPU time, allocated bytes and visited nodes of the phases of a
+ * conversion, so that regressions can be tracked as the converted code base and the rewrite rules
+ * grow.
+ *
+ * <p>Phases that walk all scripts at once, such as compiling and the conversion passes, are
+ * measured as a whole. Printing and writing are measured for every file. CPU time and allocations
+ * are those of the thread running the phase, and are -1 where the JVM does not report them.
+ */
+final class ConversionProfile {
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  /** The cost of a single phase, or of a single phase of one file. */
+  static final class Measurement {
+    final String phase;
+    @Nullable final String file;
+    final long wallNanos;
+    final long cpuNanos;
+    final long allocatedBytes;
+    /** Null when the phase does not visit nodes, or visits them in a way that is not counted. */
+    @Nullable final Long nodes;
+
+    private Measurement(
+        String phase,
+        @Nullable String file,
+        long wallNanos,
+        long cpuNanos,
+        long allocatedBytes,
+        @Nullable Long nodes) {
+      this.phase = phase;
+      this.file = file;
+      this.wallNanos = wallNanos;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+      this.nodes = nodes;
+    }
+  }
+
+  /** A phase being measured on the thread that started it. */
+  final class Span {
+    private final String phase;
+    @Nullable private final String file;
+    private final long startWall = System.nanoTime();
+    private final long startCpu = cpuTime();
+    private final long startAllocated = allocatedBytes();
+
+    private Span(String phase, @Nullable String file) {
+      this.phase = phase;
+      this.file = file;
+    }
+
+    /** Records the phase, which visited the given number of nodes, or null if unknown. */
+    void finish(@Nullable Long nodes) {
+      long wall = System.nanoTime();
+      long cpu = cpuTime();
+      long allocated = allocatedBytes();
+      record(measure(wall, cpu, allocated, nodes));
+    }
+
+    /**
+     * Records the phase, which visited the tree under {@code root}. The nodes are counted after the
+     * clocks are read, so counting them does not add to the cost of the phase.
+     */
+    void finishCounting(Node root) {
+      long wall = System.nanoTime();
+      long cpu = cpuTime();
+      long allocated = allocatedBytes();
+      record(measure(wall, cpu, allocated, countNodes(root)));
+    }
+
+    private Measurement measure(long wall, long cpu, long allocated, @Nullable Long nodes) {
+      return new Measurement(
+          phase,
+          file,
+          wall - startWall,
+          cpu == -1 || startCpu == -1 ? -1 : cpu - startCpu,
+          allocated == -1 || startAllocated == -1 ? -1 : allocated - startAllocated,
+          nodes);
+    }
+  }
+
+  private final List<Measurement> phases = new ArrayList<>();
+  private final List<Measurement> files = new ArrayList<>();
+
+  /** Starts measuring a phase of the whole conversion on the current thread. */
+  Span start(String phase) {
+    return new Span(phase, null);
+  }
+
+  /** Starts measuring a phase of a single file on the current thread. */
+  Span start(String phase, String file) {
+    return new Span(phase, file);
+  }
+
+  private synchronized void record(Measurement measurement) {
+    (measurement.file == null ? phases : files).add(measurement);
+  }
+
+  /**
+   * Returns the report as JSON, with the phases of the whole conversion in the order they ran and
+   * the phases of single files grouped by file.
+   */
+  synchronized String toJson() {
+    List<Measurement> sortedFiles = new ArrayList<>(files);
+    // Files are printed concurrently, the sort is stable so the phases of a file stay in order.
+    sortedFiles.sort(Comparator.comparing(m -> m.file));
+    Report report = new Report();
+    report.toolVersion = TypeScriptGenerator.getToolVersion();
+    report.phases = phases;
+    report.files = sortedFiles;
+    return new GsonBuilder().setPrettyPrinting().create().toJson(report);
+  }
+
+  private static final class Report {
+    String toolVersion;
+    List<Measurement> phases;
+    List<Measurement> files;
+  }
+
+  /** Returns the number of nodes in the tree under n, including n. */
+  private static long countNodes(Node n) {
+    long count = 1;
+    for (Node child = n.getFirstChild(); child != null; child = child.getNext()) {
+      count += countNodes(child);
+    }
+    return count;
+  }
+
+  private static long cpuTime() {
+    return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+  }
+
+  private static long allocatedBytes() {
+    if (THREADS instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+      if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+        return threads.getCurrentThreadAllocatedBytes();
+      }
+    }
+    return -1;
+  }
+}
@@ -26,7 +26,6 @@ public final class ExternConversionPass implements CompilerPass {
     private class Traversal extends AbstractPostOrderCallback {
         @Override
         public void visit(NodeTraversal t, Node n, Node parent) {
-            System.out.println(n.toString());
             switch (n.getToken()) {
                 case VAR:
                     // Rule: remove var initialized to empty object
@@ -0,0 +1,53 @@
+package shaka.ts.migrator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.javascript.jscomp.SourceFile;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Records that a set of externs was converted with a set of options, so that a later run with the
+ * same externs and options can skip parsing and converting them altogether.
+ *
+ * <p>The stamp file only holds a key derived from the options and from the name and content of
+ * every extern input.
+ */
+final class ExternsStamp {
+  private ExternsStamp() {}
+
+  /** Returns the key of a stamp for these externs converted with these options. */
+  static String key(Options opts, List<SourceFile> externs) throws IOException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(IncrementalCache.key(opts, true), UTF_8).putByte((byte) 0);
+    for (SourceFile extern : externs) {
+      hasher.putString(extern.getName(), UTF_8).putByte((byte) 0);
+      hasher.putString(IncrementalCache.hash(extern.getCode()), UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  /** Returns if the stamp at {@code path} was written with {@code key}. */
+  static boolean isCurrent(Path path, String key) {
+    if (!Files.isRegularFile(path)) {
+      return false;
+    }
+    try {
+      return new String(Files.readAllBytes(path), UTF_8).trim().equals(key);
+    } catch (IOException e) {
+      System.err.println("Ignoring unreadable externs stamp " + path + ": " + e.getMessage());
+      return false;
+    }
+  }
+
+  static void write(Path path, String key) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    Files.write(path, (key + "\n").getBytes(UTF_8));
+  }
+}
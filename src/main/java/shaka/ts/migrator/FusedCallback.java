@@ -0,0 +1,38 @@
+package shaka.ts.migrator;
+
+import com.google.javascript.jscomp.NodeTraversal;
+import com.google.javascript.jscomp.NodeTraversal.Callback;
+import com.google.javascript.rhino.Node;
+import java.util.List;
+
+/**
+ * Lets several callbacks share one walk of the tree, visiting each node in the order they are
+ * listed. The callbacks must decide alike which nodes to traverse, as only the first one is asked.
+ *
+ * <p>When a callback detaches or replaces the node it visits, the callbacks after it do not visit
+ * that node, as they would not have found it in a walk of their own.
+ */
+final class FusedCallback implements Callback {
+  private final List<? extends Callback> callbacks;
+
+  FusedCallback(List<? extends Callback> callbacks) {
+    this.callbacks = callbacks;
+  }
+
+  @Override
+  public boolean shouldTraverse(NodeTraversal t, Node n, Node parent) {
+    return callbacks.get(0).shouldTraverse(t, n, parent);
+  }
+
+  @Override
+  public void visit(NodeTraversal t, Node n, Node parent) {
+    // Not the parent argument, which is null for the root of the walk.
+    Node originalParent = n.getParent();
+    for (Callback callback : callbacks) {
+      callback.visit(t, n, parent);
+      if (n.getParent() != originalParent) {
+        return;
+      }
+    }
+  }
+}
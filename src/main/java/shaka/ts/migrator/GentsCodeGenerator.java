@@ -9,21 +9,28 @@ import com.google.javascript.rhino.Node;
 import com.google.javascript.rhino.Token;
 
 import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /** Code generator for gents to add TypeScript specific code generation. */
 public class GentsCodeGenerator extends CodeGenerator {
 
   private final NodeComments nodeComments;
+  /** Nodes that get a newline before them, see {@link #findNewlinesBefore}. */
+  private final Set<Node> newlinesBefore;
   private final Map<String, String> externsMap;
 
   GentsCodeGenerator(
       CodeConsumer consumer,
       CompilerOptions options,
       NodeComments nodeComments,
+      Set<Node> newlinesBefore,
       Map<String, String> externsMap) {
     super(consumer, options);
     this.nodeComments = nodeComments;
+    this.newlinesBefore = newlinesBefore;
     this.externsMap = externsMap;
   }
 
@@ -84,13 +91,8 @@ public class GentsCodeGenerator extends CodeGenerator {
 
   /** Add newlines to the generated source. */
   private void maybeAddNewline(Node n) {
-    boolean hasComment =
-        nodeComments.hasComment(n)
-            || nodeComments.hasComment(n.getParent())
-            || isPreviousEmptyAndHasComment(n)
-            || (n.getParent() != null && isPreviousEmptyAndHasComment(n.getParent()));
-
-    if (!hasComment && TOKENS_TO_ADD_NEWLINES_BEFORE.contains(n.getToken())) {
+    // Only the declaration tokens can be in the set, which spares the lookup for the other nodes.
+    if (TOKENS_TO_ADD_NEWLINES_BEFORE.contains(n.getToken()) && newlinesBefore.contains(n)) {
       // CodeGernator.add("\n") doesn't append anything. Fixing the actual bug in Closure Compiler
       // is difficult. Works around the bug by passing " \n". The extra whitespace is stripped by
       // Closure and not emitted in the final output of Gents. An exception is when this is the
@@ -100,7 +102,54 @@ public class GentsCodeGenerator extends CodeGenerator {
     }
   }
 
-  private boolean isPreviousEmptyAndHasComment(Node n) {
+  /**
+   * Returns the nodes under {@code root} that are emitted on a new line: declarations that have no
+   * comment of their own or around them to separate them from the previous statement.
+   *
+   * <p>Computed in one sweep before emitting, so the generator only does a set lookup per
+   * declaration. The set is keyed by identity rather than by pre-order index, since the generator
+   * does not emit nodes in pre-order, and holds only the declarations.
+   */
+  static Set<Node> findNewlinesBefore(Node root, NodeComments nodeComments) {
+    Set<Node> newlinesBefore = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Walks the tree in pre-order through the sibling and parent links, so deep trees cannot
+    // overflow the stack.
+    Node n = root;
+    while (n != null) {
+      if (TOKENS_TO_ADD_NEWLINES_BEFORE.contains(n.getToken())
+          && !hasCommentAround(n, nodeComments)) {
+        newlinesBefore.add(n);
+      }
+      n = nextInPreOrder(n, root);
+    }
+    return newlinesBefore;
+  }
+
+  /** Returns the node after {@code n} in a pre-order walk of {@code root}, or null at the end. */
+  @Nullable
+  private static Node nextInPreOrder(Node n, Node root) {
+    if (n.hasChildren()) {
+      return n.getFirstChild();
+    }
+    while (n != root) {
+      if (n.getNext() != null) {
+        return n.getNext();
+      }
+      n = n.getParent();
+    }
+    return null;
+  }
+
+  private static boolean hasCommentAround(Node n, NodeComments nodeComments) {
+    return !nodeComments.isEmpty()
+        && (nodeComments.hasComment(n)
+            || nodeComments.hasComment(n.getParent())
+            || isPreviousEmptyAndHasComment(n, nodeComments)
+            || (n.getParent() != null
+                && isPreviousEmptyAndHasComment(n.getParent(), nodeComments)));
+  }
+
+  private static boolean isPreviousEmptyAndHasComment(Node n, NodeComments nodeComments) {
     if (n == null || n.getParent() == null) {
       return false;
     }
@@ -0,0 +1,177 @@
+package shaka.ts.migrator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * The on-disk state of an incremental run. For every converted file it stores the hash of the
+ * source, the generated TypeScript and the module metadata the file contributed to {@link
+ * CollectModuleMetadata}, so that later runs can skip files that did not change.
+ *
+ * <p>The whole cache is discarded when the options, the tool version or the cache format change.
+ */
+final class IncrementalCache {
+  /** Bumped whenever the layout of the cache file changes. */
+  private static final int FORMAT_VERSION = 2;
+
+  /** What a single source file produced in a previous run. */
+  static final class Entry {
+    String contentHash;
+    String output;
+    /** Null when the file does not declare a goog.module or goog.provide. */
+    @Nullable ModuleRecord module;
+    /** Type names the file looked up in the global symbol table while it was converted. */
+    List<String> typeReferences = new ArrayList<>();
+    /** Namespaces the file goog.requires. */
+    List<String> requiredNamespaces = new ArrayList<>();
+  }
+
+  /** The persisted form of a {@link CollectModuleMetadata.FileModule}. */
+  static final class ModuleRecord {
+    String file;
+    boolean isGoogModule;
+    boolean hasImports;
+    List<String> jsNamespaces;
+    Map<String, Boolean> namespaceHasDefaultExport;
+    Map<String, List<String>> providesObjectChildren;
+    Map<String, String> exportedNamespacesToSymbols;
+    Map<String, String> importedNamespacesToSymbols;
+
+    /** Returns every namespace and symbol the module provides or exports. */
+    Set<String> getNames() {
+      Set<String> names = new HashSet<>(jsNamespaces);
+      names.addAll(providesObjectChildren.keySet());
+      names.addAll(namespaceHasDefaultExport.keySet());
+      names.addAll(importedNamespacesToSymbols.keySet());
+      return names;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ModuleRecord)) {
+        return false;
+      }
+      ModuleRecord other = (ModuleRecord) o;
+      return Objects.equals(file, other.file)
+          && isGoogModule == other.isGoogModule
+          && hasImports == other.hasImports
+          && Objects.equals(jsNamespaces, other.jsNamespaces)
+          && Objects.equals(namespaceHasDefaultExport, other.namespaceHasDefaultExport)
+          && Objects.equals(providesObjectChildren, other.providesObjectChildren)
+          && Objects.equals(exportedNamespacesToSymbols, other.exportedNamespacesToSymbols)
+          && Objects.equals(importedNamespacesToSymbols, other.importedNamespacesToSymbols);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(file, jsNamespaces, importedNamespacesToSymbols);
+    }
+  }
+
+  private int formatVersion = FORMAT_VERSION;
+  private String key;
+  private Map<String, Entry> entries = new LinkedHashMap<>();
+
+  private IncrementalCache(String key) {
+    this.key = key;
+  }
+
+  @Nullable
+  Entry get(String file) {
+    return entries.get(file);
+  }
+
+  void put(String file, Entry entry) {
+    entries.put(file, entry);
+  }
+
+  /** Returns the module metadata of cached files that are not part of the current input. */
+  List<ModuleRecord> getRemovedModules(Set<String> files) {
+    List<ModuleRecord> removed = new ArrayList<>();
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      if (!files.contains(entry.getKey()) && entry.getValue().module != null) {
+        removed.add(entry.getValue().module);
+      }
+    }
+    return removed;
+  }
+
+  /** Drops the entries of all files that are not part of the current input. */
+  void retainFiles(Iterable<String> files) {
+    Map<String, Entry> retained = new LinkedHashMap<>();
+    for (String file : files) {
+      if (entries.containsKey(file)) {
+        retained.put(file, entries.get(file));
+      }
+    }
+    entries = retained;
+  }
+
+  /**
+   * Loads the cache stored at {@code path}. Returns an empty cache if there is none yet, or if it
+   * was written with a different key or format.
+   */
+  static IncrementalCache load(Path path, String key) {
+    if (Files.isRegularFile(path)) {
+      try (Reader reader = Files.newBufferedReader(path, UTF_8)) {
+        IncrementalCache cache = new Gson().fromJson(reader, IncrementalCache.class);
+        if (cache != null
+            && cache.formatVersion == FORMAT_VERSION
+            && key.equals(cache.key)
+            && cache.entries != null) {
+          return cache;
+        }
+      } catch (IOException | JsonParseException e) {
+        System.err.println("Ignoring unreadable incremental cache " + path + ": " + e.getMessage());
+      }
+    }
+    return new IncrementalCache(key);
+  }
+
+  void save(Path path) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    try (Writer writer = Files.newBufferedWriter(path, UTF_8)) {
+      new Gson().toJson(this, writer);
+    }
+  }
+
+  /** Returns the hash identifying the content of a source file. */
+  static String hash(String content) {
+    return Hashing.sha256().hashString(content, UTF_8).toString();
+  }
+
+  /** Returns the key under which runs with these settings share a cache. */
+  static String key(Options opts, boolean declareOnly) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(TypeScriptGenerator.getToolVersion(), UTF_8).putByte((byte) 0);
+    hasher.putString(opts.root, UTF_8).putByte((byte) 0);
+    hasher.putString(opts.absolutePathPrefix, UTF_8).putByte((byte) 0);
+    hasher.putString(opts.alreadyConvertedPrefix, UTF_8).putByte((byte) 0);
+    for (Map.Entry<String, String> entry : new TreeMap<>(opts.externsMap).entrySet()) {
+      hasher.putString(entry.getKey(), UTF_8).putByte((byte) 0);
+      hasher.putString(entry.getValue(), UTF_8).putByte((byte) 0);
+    }
+    hasher.putBoolean(declareOnly);
+    return hasher.hash().toString();
+  }
+}
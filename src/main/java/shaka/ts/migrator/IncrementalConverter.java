@@ -0,0 +1,213 @@
+package shaka.ts.migrator;
+
+import com.google.javascript.jscomp.SourceFile;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Converts a set of files, reusing the output of a previous run for every file that is unchanged
+ * and does not depend on anything that changed.
+ *
+ * <p>A file's output depends on other files only through their module metadata: how the modules
+ * it goog.requires are imported, and the exported symbols {@link TypeAnnotationPass} uses to
+ * rewrite type names. Files whose content changed are converted first, with the module metadata of
+ * all other files restored from the cache. If that changed any part of a module's metadata, every
+ * reused file that requires one of its namespaces or uses a type name one of its symbols is a
+ * prefix of is converted again in a second run.
+ */
+final class IncrementalConverter {
+  private final Options opts;
+  private final Path cacheFile;
+  private final PathUtil pathUtil;
+  /** Shared by all runs of a conversion, null unless profiling. */
+  @Nullable private ConversionProfile profile;
+  /** The files the last conversion compiled instead of reusing their cached output. */
+  private Set<String> convertedFiles = Collections.emptySet();
+
+  IncrementalConverter(Options opts, Path cacheFile) {
+    this.opts = opts;
+    this.cacheFile = cacheFile;
+    this.pathUtil = new PathUtil(opts.root, opts.absolutePathPrefix);
+    this.profile = opts.profileReport == null ? null : new ConversionProfile();
+  }
+
+  /** Records the phases of all runs in a profile shared with other conversions. */
+  void setProfile(ConversionProfile profile) {
+    this.profile = profile;
+  }
+
+  /** Returns the files the last {@link #convert} compiled, in source order. */
+  Set<String> getConvertedFiles() {
+    return Collections.unmodifiableSet(convertedFiles);
+  }
+
+  /** Same as {@link TypeScriptGenerator#generateTypeScript}, but backed by the cache. */
+  TypeScriptGenerator.GentsResult convert(
+      Set<String> filesToConvert, List<SourceFile> srcFiles, boolean declareOnly)
+      throws IOException {
+    IncrementalCache cache =
+        IncrementalCache.load(cacheFile, IncrementalCache.key(opts, declareOnly));
+
+    Map<String, SourceFile> sources = new LinkedHashMap<>();
+    Map<String, String> hashes = new LinkedHashMap<>();
+    Set<String> dirty = new LinkedHashSet<>();
+    for (SourceFile srcFile : srcFiles) {
+      String name = srcFile.getName();
+      String hash = IncrementalCache.hash(srcFile.getCode());
+      sources.put(name, srcFile);
+      hashes.put(name, hash);
+      IncrementalCache.Entry entry = cache.get(name);
+      if (entry == null || entry.output == null || !entry.contentHash.equals(hash)) {
+        dirty.add(name);
+      }
+    }
+
+    TypeScriptGenerator.GentsResult result =
+        convertDirtyFiles(cache, filesToConvert, sources, dirty, declareOnly);
+    Set<String> affected = findAffectedFiles(cache, sources.keySet(), dirty, result);
+    if (!affected.isEmpty()) {
+      dirty.addAll(affected);
+      result = convertDirtyFiles(cache, filesToConvert, sources, dirty, declareOnly);
+    }
+
+    TypeScriptGenerator.GentsResult merged = new TypeScriptGenerator.GentsResult();
+    merged.moduleRewriteLog = result.moduleRewriteLog;
+    merged.profile = profile;
+    for (String file : sources.keySet()) {
+      String outputPath = pathUtil.getFilePathWithoutExtension(file);
+      if (dirty.contains(file)) {
+        IncrementalCache.Entry entry = new IncrementalCache.Entry();
+        entry.contentHash = hashes.get(file);
+        entry.output = result.sourceFileMap.get(outputPath);
+        entry.module = result.moduleRecords.get(file);
+        entry.typeReferences = new ArrayList<>(result.typeReferences.get(file));
+        entry.requiredNamespaces = new ArrayList<>(result.requiredNamespaces.get(file));
+        cache.put(file, entry);
+      }
+      String output = cache.get(file).output;
+      if (output != null) {
+        merged.sourceFileMap.put(outputPath, output);
+      }
+    }
+    cache.retainFiles(sources.keySet());
+    cache.save(cacheFile);
+    convertedFiles = new LinkedHashSet<>();
+    for (String file : sources.keySet()) {
+      if (dirty.contains(file)) {
+        convertedFiles.add(file);
+      }
+    }
+
+    System.err.println(
+        String.format(
+            "Incremental conversion: %d of %d files converted, %d reused.",
+            dirty.size(), sources.size(), sources.size() - dirty.size()));
+    return merged;
+  }
+
+  private TypeScriptGenerator.GentsResult convertDirtyFiles(
+      IncrementalCache cache,
+      Set<String> filesToConvert,
+      Map<String, SourceFile> sources,
+      Set<String> dirty,
+      boolean declareOnly) {
+    List<SourceFile> toCompile = new ArrayList<>();
+    List<IncrementalCache.ModuleRecord> reusedModules = new ArrayList<>();
+    for (String file : sources.keySet()) {
+      if (dirty.contains(file)) {
+        toCompile.add(sources.get(file));
+      } else if (cache.get(file).module != null) {
+        reusedModules.add(cache.get(file).module);
+      }
+    }
+
+    TypeScriptGenerator gents = new TypeScriptGenerator(opts);
+    gents.setPrecomputedModules(reusedModules);
+    if (profile != null) {
+      gents.setProfile(profile);
+    }
+    return gents.generateTypeScript(
+        filesToConvert, toCompile, Collections.emptyList(), declareOnly);
+  }
+
+  /**
+   * Returns the reused files that depend on a module whose metadata changed because of the files
+   * converted in this run.
+   */
+  private static Set<String> findAffectedFiles(
+      IncrementalCache cache,
+      Set<String> files,
+      Set<String> dirty,
+      TypeScriptGenerator.GentsResult result) {
+    // The names provided or exported by a changed module, before and after the change.
+    Set<String> changedNames = new HashSet<>();
+    for (String file : dirty) {
+      IncrementalCache.Entry entry = cache.get(file);
+      @Nullable IncrementalCache.ModuleRecord before = entry == null ? null : entry.module;
+      @Nullable IncrementalCache.ModuleRecord after = result.moduleRecords.get(file);
+      if (!Objects.equals(before, after)) {
+        addNames(before, changedNames);
+        addNames(after, changedNames);
+      }
+    }
+    // Files that were deleted since the last run no longer provide anything.
+    for (IncrementalCache.ModuleRecord removed : cache.getRemovedModules(files)) {
+      addNames(removed, changedNames);
+    }
+
+    Set<String> affected = new LinkedHashSet<>();
+    if (changedNames.isEmpty()) {
+      return affected;
+    }
+    for (String file : files) {
+      if (!dirty.contains(file) && dependsOnAny(cache.get(file), changedNames)) {
+        affected.add(file);
+      }
+    }
+    return affected;
+  }
+
+  private static void addNames(@Nullable IncrementalCache.ModuleRecord module, Set<String> names) {
+    if (module != null) {
+      names.addAll(module.getNames());
+    }
+  }
+
+  /** Returns if the file requires one of the names or uses a type name they are a prefix of. */
+  private static boolean dependsOnAny(IncrementalCache.Entry entry, Set<String> names) {
+    for (String namespace : entry.requiredNamespaces) {
+      if (names.contains(namespace)) {
+        return true;
+      }
+    }
+    for (String typeName : entry.typeReferences) {
+      if (hasChangedPrefix(typeName, names)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns if any of the symbols is the type name itself or one of its dotted prefixes. */
+  private static boolean hasChangedPrefix(String typeName, Set<String> symbols) {
+    if (symbols.contains(typeName)) {
+      return true;
+    }
+    for (int dot = typeName.lastIndexOf('.'); dot > 0; dot = typeName.lastIndexOf('.', dot - 1)) {
+      if (symbols.contains(typeName.substring(0, dot))) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,156 @@
+package shaka.ts.migrator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds and reads the {@code .js} files under a set of directories, listing directories and
+ * reading files concurrently.
+ *
+ * <p>Inputs are named by their path relative to a base directory, so files sharing a base name in
+ * different directories are all kept, and are returned sorted by that name regardless of the order
+ * in which they were read. Symbolic links are not followed.
+ */
+final class InputLoader {
+  /** Files from this size on are decoded straight from a memory mapping of the file. */
+  private static final long MAPPED_READ_THRESHOLD = 1 << 20;
+
+  /** A file that was read. */
+  static final class Input {
+    final Path path;
+    /** The path relative to the base directory, with '/' separators. */
+    final String name;
+    final String content;
+
+    private Input(Path path, String name, String content) {
+      this.path = path;
+      this.name = name;
+      this.content = content;
+    }
+  }
+
+  private final int threads;
+
+  InputLoader(int threads) {
+    this.threads = threads;
+  }
+
+  /** Returns the {@code .js} files under the roots, named relative to {@code base}. */
+  List<Input> load(Path base, List<Path> roots) throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      List<Input> inputs = pool.submit(() -> loadAll(base, roots)).get();
+      inputs.sort(Comparator.comparing(input -> input.name));
+      return inputs;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading inputs", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static List<Input> loadAll(Path base, List<Path> roots) {
+    List<LoadTask> tasks = new ArrayList<>();
+    for (Path root : roots) {
+      tasks.add(new LoadTask(base, root));
+    }
+    List<Input> inputs = new ArrayList<>();
+    for (LoadTask task : ForkJoinTask.invokeAll(tasks)) {
+      inputs.addAll(task.join());
+    }
+    return inputs;
+  }
+
+  /** Reads every file under a directory, forking a task per subdirectory and per file. */
+  private static final class LoadTask extends RecursiveTask<List<Input>> {
+    private final Path base;
+    private final Path path;
+
+    LoadTask(Path base, Path path) {
+      this.base = base;
+      this.path = path;
+    }
+
+    @Override
+    protected List<Input> compute() {
+      try {
+        BasicFileAttributes attributes =
+            Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        List<Input> inputs = new ArrayList<>();
+        if (attributes.isRegularFile()) {
+          if (path.toString().endsWith(".js")) {
+            inputs.add(new Input(path, getName(base, path), read(path, attributes.size())));
+          }
+          return inputs;
+        }
+        if (!attributes.isDirectory()) {
+          return inputs;
+        }
+        List<LoadTask> children = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+          for (Path entry : entries) {
+            children.add(new LoadTask(base, entry));
+          }
+        }
+        for (LoadTask child : invokeAll(children)) {
+          inputs.addAll(child.join());
+        }
+        return inputs;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private static String getName(Path base, Path path) {
+    return base.relativize(path).toString().replace(File.separatorChar, '/');
+  }
+
+  /**
+   * Decodes a file as UTF-8, replacing malformed input. Large files are mapped rather than copied
+   * into a heap buffer first.
+   */
+  private static String read(Path path, long size) throws IOException {
+    if (size < MAPPED_READ_THRESHOLD) {
+      return new String(Files.readAllBytes(path), UTF_8);
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return UTF_8
+          .newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE)
+          .decode(bytes)
+          .toString();
+    } catch (CharacterCodingException e) {
+      // Not thrown when replacing malformed input.
+      throw new IOException(e);
+    }
+  }
+}
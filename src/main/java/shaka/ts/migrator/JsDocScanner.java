@@ -0,0 +1,328 @@
+package shaka.ts.migrator;
+
+/**
+ * Removes the tags TypeScript makes redundant from JSDoc comments, such as the types of {@code
+ * @param} and {@code @return}, {@code @type}, {@code @extends} and visibility tags.
+ *
+ * <p>Each rule scans the comment once from one {@code @} to the next, without backtracking, and
+ * replaces what the regular expression in its documentation would match. Rules run in order, each
+ * on the output of the previous one. As with {@link java.util.regex.Matcher#replaceAll}, a match
+ * starts at the leftmost possible position after the end of the previous match, and may start with
+ * the leading {@code *} of its JSDoc line, captured as {@code block}:
+ *
+ * <pre>{@code (?<block>[ \t]*\*[ \t]*)?}</pre>
+ *
+ * <p>Rules with a {@code keep} group replace every match with {@code block} and {@code keep} if
+ * the first match kept something other than whitespace, and with nothing otherwise. Rules ending
+ * with an {@code eol} group remove every match if the first match reached the end of its line, and
+ * replace every match with {@code block} otherwise, so that the rest of the line stays in the
+ * comment.
+ */
+final class JsDocScanner {
+  /** Where a rule matched. Ranges are {@code -1} when the group did not match. */
+  private static final class Match {
+    int start;
+    int end;
+    int tag;
+    int blockStart;
+    int keepStart = -1;
+    int keepEnd = -1;
+    boolean eol;
+    /** Index of the last '}' of the comment, computed when first needed. */
+    int lastBrace = -2;
+  }
+
+  /** Matches what follows the {@code @} of a tag, see {@link #rules}. */
+  private interface Rule {
+    /** Returns if the rule matches the tag at {@code tag}, setting the end and groups of match. */
+    boolean matchAt(String s, int tag, Match match);
+  }
+
+  /**
+   * The rules, in the order they are applied. The first four have a {@code keep} group, the others
+   * an {@code eol} group.
+   */
+  private static final Rule[] rules = {
+    // @param[ \t]*(\{.*\})[ \t]*[\w\$]+[ \t]*(?<keep>\*\/|\n)
+    (s, tag, match) -> {
+      int brace = skipSpaces(s, tagEnd(s, tag, "param"));
+      return brace >= 0 && isAt(s, brace, '{') && matchTypeThenKeep(s, brace, true, match);
+    },
+    // @returns?[ \t]*(\{.*\})[ \t]*(?<keep>\*\/|\n)
+    (s, tag, match) -> {
+      for (String name : new String[] {"returns", "return"}) {
+        int brace = skipSpaces(s, tagEnd(s, tag, name));
+        if (brace >= 0 && isAt(s, brace, '{') && matchTypeThenKeep(s, brace, false, match)) {
+          return true;
+        }
+      }
+      return false;
+    },
+    // (?<keep>@(param|returns?))[ \t]*(\{.*\})
+    (s, tag, match) -> {
+      for (String name : new String[] {"param", "returns", "return"}) {
+        if (matchTagThenType(s, tag, name, match)) {
+          return true;
+        }
+      }
+      return false;
+    },
+    // (?<keep>@export)[ \t]*(\{.*\})
+    (s, tag, match) -> matchTagThenType(s, tag, "export", match),
+    // @(extends|implements|type)[ \t]*(\{[^@]*\})[ \t]*(?<eol>[ \t]*\n)?
+    (s, tag, match) -> {
+      for (String name : new String[] {"extends", "implements", "type"}) {
+        int brace = skipSpaces(s, tagEnd(s, tag, name));
+        if (brace >= 0 && isAt(s, brace, '{')) {
+          int regionEnd = brace + 1;
+          while (regionEnd < s.length() && s.charAt(regionEnd) != '@') {
+            regionEnd++;
+          }
+          int close = lastIndexOf(s, '}', brace + 1, regionEnd);
+          if (close >= 0) {
+            matchEol(s, skipSpaces(s, close + 1), match);
+            return true;
+          }
+        }
+      }
+      return false;
+    },
+    // @(constructor|interface|record)[ \t]*(?<eol>[ \t]*\n)?
+    (s, tag, match) -> {
+      for (String name : new String[] {"constructor", "interface", "record"}) {
+        int end = tagEnd(s, tag, name);
+        if (end >= 0) {
+          matchEol(s, skipSpaces(s, end), match);
+          return true;
+        }
+      }
+      return false;
+    },
+    // @(private|protected|public|package|const|enum)[ \t]*(\{.*\})?[ \t]*(?<eol>[ \t]*\n)?
+    (s, tag, match) -> {
+      for (String name :
+          new String[] {"private", "protected", "public", "package", "const", "enum"}) {
+        int end = skipSpaces(s, tagEnd(s, tag, name));
+        if (end >= 0) {
+          if (isAt(s, end, '{')) {
+            int close = lastIndexOf(s, '}', end + 1, lineEnd(s, end + 1));
+            if (close >= 0) {
+              end = skipSpaces(s, close + 1);
+            }
+          }
+          matchEol(s, end, match);
+          return true;
+        }
+      }
+      return false;
+    },
+    // @suppress[ \t]*\{extraRequire\}[ \t]*(?<eol>[ \t]*\n)?
+    (s, tag, match) -> {
+      int brace = skipSpaces(s, tagEnd(s, tag, "suppress"));
+      if (brace >= 0 && s.startsWith("{extraRequire}", brace)) {
+        matchEol(s, skipSpaces(s, brace + "{extraRequire}".length()), match);
+        return true;
+      }
+      return false;
+    },
+    // @typedef[ \t]*(\{.*\})(?<eol>[ \t]*\n)? where . also matches line terminators
+    (s, tag, match) -> {
+      int brace = skipSpaces(s, tagEnd(s, tag, "typedef"));
+      if (brace < 0 || !isAt(s, brace, '{')) {
+        return false;
+      }
+      if (match.lastBrace == -2) {
+        match.lastBrace = s.lastIndexOf('}');
+      }
+      if (match.lastBrace <= brace) {
+        return false;
+      }
+      int end = skipSpaces(s, match.lastBrace + 1);
+      match.eol = isAt(s, end, '\n');
+      match.end = match.eol ? end + 1 : match.lastBrace + 1;
+      return true;
+    },
+  };
+
+  /** The number of rules with a {@code keep} group, which come first. */
+  private static final int KEEP_RULES = 4;
+
+  private JsDocScanner() {}
+
+  /** Removes the redundant tags from a JSDoc comment. */
+  static String filter(String comment) {
+    if (comment.indexOf('@') < 0) {
+      return comment;
+    }
+    for (int i = 0; i < rules.length; i++) {
+      comment = apply(rules[i], i < KEEP_RULES, comment);
+    }
+    return comment;
+  }
+
+  private static String apply(Rule rule, boolean hasKeep, String s) {
+    Match match = new Match();
+    if (!find(rule, s, 0, match)) {
+      return s;
+    }
+    boolean keepBlock =
+        hasKeep ? !s.substring(match.keepStart, match.keepEnd).trim().isEmpty() : !match.eol;
+    StringBuilder sb = new StringBuilder(s.length());
+    int from = 0;
+    do {
+      sb.append(s, from, match.start);
+      if (keepBlock) {
+        if (match.blockStart >= 0) {
+          sb.append(s, match.blockStart, match.tag);
+        }
+        if (hasKeep) {
+          sb.append(s, match.keepStart, match.keepEnd);
+        }
+      }
+      from = match.end;
+    } while (find(rule, s, from, match));
+    sb.append(s, from, s.length());
+    return sb.toString();
+  }
+
+  /** Finds the first match at or after {@code from}. */
+  private static boolean find(Rule rule, String s, int from, Match match) {
+    for (int tag = s.indexOf('@', from); tag >= 0; tag = s.indexOf('@', tag + 1)) {
+      match.keepStart = -1;
+      match.keepEnd = -1;
+      match.eol = false;
+      if (rule.matchAt(s, tag, match)) {
+        match.start = tag;
+        match.tag = tag;
+        match.blockStart = -1;
+        int star = tag;
+        while (star > from && isSpaceOrTab(s.charAt(star - 1))) {
+          star--;
+        }
+        if (star > from && s.charAt(star - 1) == '*') {
+          int start = star - 1;
+          while (start > from && isSpaceOrTab(s.charAt(start - 1))) {
+            start--;
+          }
+          match.start = start;
+          match.blockStart = start;
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Matches {@code (\{.*\})[ \t]*[\w\$]+[ \t]*(?<keep>\*\/|\n)} from {@code brace} when {@code
+   * name} is set, or the same without the name otherwise. The type ends with the last '}' of the
+   * line that lets the rest match.
+   */
+  private static boolean matchTypeThenKeep(String s, int brace, boolean name, Match match) {
+    for (int close = lastIndexOf(s, '}', brace + 1, lineEnd(s, brace + 1));
+        close >= 0;
+        close = lastIndexOf(s, '}', brace + 1, close)) {
+      int i = skipSpaces(s, close + 1);
+      if (name) {
+        int nameStart = i;
+        while (i < s.length() && isNameChar(s.charAt(i))) {
+          i++;
+        }
+        if (i == nameStart) {
+          continue;
+        }
+        i = skipSpaces(s, i);
+      }
+      if (s.startsWith("*/", i)) {
+        match.keepStart = i;
+        match.keepEnd = i + 2;
+      } else if (isAt(s, i, '\n')) {
+        match.keepStart = i;
+        match.keepEnd = i + 1;
+      } else {
+        continue;
+      }
+      match.end = match.keepEnd;
+      return true;
+    }
+    return false;
+  }
+
+  /** Matches {@code (?<keep>@name)[ \t]*(\{.*\})} at {@code tag}. */
+  private static boolean matchTagThenType(String s, int tag, String name, Match match) {
+    int end = tagEnd(s, tag, name);
+    int brace = skipSpaces(s, end);
+    if (brace < 0 || !isAt(s, brace, '{')) {
+      return false;
+    }
+    int close = lastIndexOf(s, '}', brace + 1, lineEnd(s, brace + 1));
+    if (close < 0) {
+      return false;
+    }
+    match.keepStart = tag;
+    match.keepEnd = end;
+    match.end = close + 1;
+    return true;
+  }
+
+  /** Matches the optional {@code (?<eol>[ \t]*\n)?} at {@code i}, after any spaces. */
+  private static void matchEol(String s, int i, Match match) {
+    match.eol = isAt(s, i, '\n');
+    match.end = match.eol ? i + 1 : i;
+  }
+
+  /** Returns the index after the tag if {@code @name} starts at {@code tag}, -1 otherwise. */
+  private static int tagEnd(String s, int tag, String name) {
+    return s.startsWith(name, tag + 1) ? tag + 1 + name.length() : -1;
+  }
+
+  /** Returns the index of the first character from {@code i} that is not a space or tab. */
+  private static int skipSpaces(String s, int i) {
+    if (i < 0) {
+      return i;
+    }
+    while (i < s.length() && isSpaceOrTab(s.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /** Returns the index of the first line terminator from {@code i}, as '.' does not match them. */
+  private static int lineEnd(String s, int i) {
+    while (i < s.length() && !isLineTerminator(s.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /** Returns the last index of {@code c} in {@code [from, to)}, or -1. */
+  private static int lastIndexOf(String s, char c, int from, int to) {
+    for (int i = to - 1; i >= from; i--) {
+      if (s.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isAt(String s, int i, char c) {
+    return i < s.length() && s.charAt(i) == c;
+  }
+
+  private static boolean isSpaceOrTab(char c) {
+    return c == ' ' || c == '\t';
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  /** Returns if the character is matched by {@code [\w\$]}. */
+  private static boolean isNameChar(char c) {
+    return (c >= 'a' && c <= 'z')
+        || (c >= 'A' && c <= 'Z')
+        || (c >= '0' && c <= '9')
+        || c == '_'
+        || c == '$';
+  }
+}
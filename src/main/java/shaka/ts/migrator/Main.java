@@ -1,86 +1,244 @@
-package shaka.ts.migrator;
-
-import com.google.common.base.Charsets;
-import com.google.common.io.Files;
-import com.google.javascript.jscomp.SourceFile;
-
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.*;
-import java.util.function.BiPredicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static java.nio.charset.StandardCharsets.UTF_8;
-
-public class Main {
-    public static void main(String[] args) {
-        try {
-            String shakaFolderPath = System.getProperty("user.home") + "/dev-workspace/shaka-player-fork";
-            process(false, shakaFolderPath + "/lib", shakaFolderPath + "/ui");
-            process(true,shakaFolderPath + "/externs");
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
-    }
-
-    private static void process(boolean declareOnly, String... paths) throws IOException {
-        var gents = new TypeScriptGenerator(new Options());
-        Set<Path> inputFiles = getAllFilesRecursively(paths);
-
-        Set<String> filesToConvert = new HashSet<>();
-        List<SourceFile> sourceFiles = new ArrayList<>();
-        Map<String, File> inputFileMap = new HashMap<>();
-        for (Path path : inputFiles) {
-            File fileFromPath = path.toFile();
-            String fileName = fileFromPath.getName();
-            if (!filesToConvert.contains(fileName)) {
-                filesToConvert.add(fileName);
-                sourceFiles.add(SourceFile.fromCode(fileName, getFileText(fileFromPath)));
-                inputFileMap.put(fileName.replace(".js", ""), fileFromPath);
-            }
-        }
-        var gentsResult = gents.generateTypeScript(filesToConvert, sourceFiles, Collections.emptyList(), declareOnly);
-        writeConvertedFiles(gentsResult.sourceFileMap, inputFileMap);
-    }
-
-    private static Set<Path> getAllFilesRecursively(String[] paths) throws IOException {
-        Set<Path> result = new HashSet<>();
-        BiPredicate<Path, BasicFileAttributes> matcher = (path, attributes) -> {
-            return attributes.isRegularFile() && path.toString().endsWith(".js");
-        };
-        for (String path : paths) {
-            try (Stream<Path> stream = java.nio.file.Files.find(Paths.get(path), 999, matcher)) {
-                result.addAll(stream.collect(Collectors.toSet()));
-            }
-        }
-        return result;
-    }
-
-    private static void writeConvertedFiles(Map<String, String> resultMap, Map<String, File> inputFileMap) {
-        for (Map.Entry<String, String> entry : resultMap.entrySet()) {
-            File jsFile = inputFileMap.get(entry.getKey());
-            File output = new File(jsFile.getParentFile() + "/" + entry.getKey() + ".ts");
-            try {
-                Files.asCharSink(output, UTF_8).write(entry.getValue());
-            } catch (IOException e) {
-                throw new IllegalArgumentException("Unable to write to file " + output.getName(), e);
-            }
-        }
-    }
-
-    private static String getFileText(final File input) throws IOException {
-        String fileContent = Files.asCharSource(input, Charsets.UTF_8).read();
-        if (input.getPath().contains("externs")) {
-            fileContent = fileContent.replaceAll("@externs", "");
-        }
-        if (input.getName().contains("mux")) {
-            fileContent = fileContent.replaceAll("mp4: typeof muxjs\\.mp4", "")
-                    .replaceAll("@constructor", "");
-        }
-        return fileContent;
-    }
-}
+package shaka.ts.migrator;
+
+import com.google.common.io.Files;
+import com.google.javascript.jscomp.SourceFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class Main {
+    /** System property naming a directory for incremental caches. Incremental mode is off without it. */
+    private static final String INCREMENTAL_CACHE_DIR_PROPERTY = "migrator.incrementalCacheDir";
+    /** System property naming a directory for profile reports. Profiling is off without it. */
+    private static final String PROFILE_DIR_PROPERTY = "migrator.profileDir";
+    /** System property naming a directory for output manifests, see {@link OutputWriter}. */
+    private static final String OUTPUT_MANIFEST_DIR_PROPERTY = "migrator.outputManifestDir";
+    /** System property naming a directory for externs stamps, see {@link ExternsStamp}. */
+    private static final String EXTERNS_STAMP_DIR_PROPERTY = "migrator.externsStampDir";
+    /** System property setting the number of shards to convert concurrently, see {@link ShardedConverter}. */
+    private static final String SHARDS_PROPERTY = "migrator.shards";
+    /** System property setting the number of threads that link comments and print files, see {@link Options#threads}. */
+    private static final String THREADS_PROPERTY = "migrator.threads";
+    /**
+     * System property naming a directory to generate a {@link SyntheticCorpus} in and convert
+     * instead of shaka-player. Its size, fan-out, comment density and seed are read from the
+     * properties below.
+     */
+    private static final String SYNTHETIC_CORPUS_DIR_PROPERTY = "migrator.syntheticCorpusDir";
+    private static final String SYNTHETIC_FILES_PROPERTY = "migrator.syntheticFiles";
+    private static final String SYNTHETIC_FAN_OUT_PROPERTY = "migrator.syntheticFanOut";
+    private static final String SYNTHETIC_COMMENT_DENSITY_PROPERTY = "migrator.syntheticCommentDensity";
+    private static final String SYNTHETIC_SEED_PROPERTY = "migrator.syntheticSeed";
+    /**
+     * System property that starts a {@link ConversionDaemon} instead of converting shaka-player:
+     * "-" serves requests from stdin, anything else is the path of a Unix domain socket to serve.
+     */
+    private static final String DAEMON_PROPERTY = "migrator.daemon";
+
+    public static void main(String[] args) {
+        try {
+            String daemon = System.getProperty(DAEMON_PROPERTY);
+            if (daemon != null) {
+                serve(daemon);
+                return;
+            }
+            String syntheticCorpusDir = System.getProperty(SYNTHETIC_CORPUS_DIR_PROPERTY);
+            if (syntheticCorpusDir != null) {
+                generateSyntheticCorpus(Paths.get(syntheticCorpusDir));
+                process(false, syntheticCorpusDir);
+                return;
+            }
+            String shakaFolderPath = System.getProperty("user.home") + "/dev-workspace/shaka-player-fork";
+            process(false, shakaFolderPath + "/lib", shakaFolderPath + "/ui");
+            process(true,shakaFolderPath + "/externs");
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private static void process(boolean declareOnly, String... paths) throws IOException {
+        var options = new Options();
+        String cacheDir = System.getProperty(INCREMENTAL_CACHE_DIR_PROPERTY);
+        if (cacheDir != null) {
+            options.incrementalCache =
+                    Paths.get(cacheDir, declareOnly ? "externs-cache.json" : "sources-cache.json").toString();
+        }
+        options.shards = Integer.getInteger(SHARDS_PROPERTY, 1);
+        options.threads = Integer.getInteger(THREADS_PROPERTY, 1);
+        String profileDir = System.getProperty(PROFILE_DIR_PROPERTY);
+        if (profileDir != null) {
+            options.profileReport =
+                    Paths.get(profileDir, declareOnly ? "externs-profile.json" : "sources-profile.json").toString();
+        }
+        String manifestDir = System.getProperty(OUTPUT_MANIFEST_DIR_PROPERTY);
+        if (manifestDir != null) {
+            options.outputManifest =
+                    Paths.get(manifestDir, declareOnly ? "externs-manifest.json" : "sources-manifest.json").toString();
+        }
+        String stampDir = System.getProperty(EXTERNS_STAMP_DIR_PROPERTY);
+        if (stampDir != null && declareOnly) {
+            options.externsStamp = Paths.get(stampDir, "externs.stamp").toString();
+        }
+        List<Path> roots = new ArrayList<>();
+        for (String path : paths) {
+            roots.add(Paths.get(path).toAbsolutePath().normalize());
+        }
+        // Inputs are named relative to the base directory, so import paths are computed from it.
+        Path base = getBaseDirectory(roots);
+        options.root = base.toString();
+        List<InputLoader.Input> inputs =
+                new InputLoader(Runtime.getRuntime().availableProcessors()).load(base, roots);
+
+        Set<String> filesToConvert = new LinkedHashSet<>();
+        List<SourceFile> sourceFiles = new ArrayList<>();
+        Map<String, File> inputFileMap = new HashMap<>();
+        addInputs(inputs, new PathUtil(options.root, options.absolutePathPrefix), filesToConvert, sourceFiles, inputFileMap);
+        String stampKey = null;
+        if (declareOnly && options.externsStamp != null) {
+            stampKey = ExternsStamp.key(options, sourceFiles);
+            if (ExternsStamp.isCurrent(Paths.get(options.externsStamp), stampKey) && outputsExist(inputFileMap)) {
+                System.err.println("Externs unchanged since " + options.externsStamp + ", skipping their conversion");
+                return;
+            }
+        }
+        ConversionProfile profile = options.profileReport == null ? null : new ConversionProfile();
+        OutputWriter writer = new OutputWriter(
+                options.outputManifest == null ? null : Paths.get(options.outputManifest),
+                Runtime.getRuntime().availableProcessors(),
+                profile);
+        long[] firstFileMillis = {-1};
+        OutputSink sink = (path, code) -> {
+            if (firstFileMillis[0] < 0) {
+                firstFileMillis[0] = System.currentTimeMillis();
+            }
+            writer.add(getOutputFile(path, inputFileMap), code);
+        };
+        TypeScriptGenerator.GentsResult result;
+        if (options.incrementalCache != null) {
+            // The cache keeps every output anyway, so there is nothing to gain from streaming.
+            IncrementalConverter converter = new IncrementalConverter(options, Paths.get(options.incrementalCache));
+            if (profile != null) {
+                converter.setProfile(profile);
+            }
+            result = converter.convert(filesToConvert, sourceFiles, declareOnly);
+            result.sourceFileMap.forEach(sink::accept);
+        } else if (options.shards > 1) {
+            ShardedConverter converter = new ShardedConverter(options);
+            if (profile != null) {
+                converter.setProfile(profile);
+            }
+            result = converter.convert(filesToConvert, sourceFiles, Collections.emptyList(), declareOnly, sink);
+        } else {
+            TypeScriptGenerator gents = new TypeScriptGenerator(options);
+            if (profile != null) {
+                gents.setProfile(profile);
+            }
+            result = gents.generateTypeScript(filesToConvert, sourceFiles, Collections.emptyList(), declareOnly, sink);
+        }
+        writer.finish();
+        System.err.println("Wrote " + writer.getWritten() + " files, " + writer.getUnchanged() + " unchanged");
+        reportTimeToFirstFile(firstFileMillis[0]);
+        if (stampKey != null) {
+            ExternsStamp.write(Paths.get(options.externsStamp), stampKey);
+        }
+        if (profile != null) {
+            File report = new File(options.profileReport);
+            report.getAbsoluteFile().getParentFile().mkdirs();
+            Files.asCharSink(report, UTF_8).write(profile.toJson());
+        }
+    }
+
+    private static void serve(String daemon) throws IOException {
+        ConversionDaemon conversionDaemon = new ConversionDaemon(new Options());
+        if (daemon.equals("-")) {
+            conversionDaemon.serveStdin();
+        } else {
+            conversionDaemon.serve(Paths.get(daemon));
+        }
+    }
+
+    /**
+     * Prints how long after the JVM started the first converted file was ready, which is what
+     * users invoking the tool on a file or two wait for.
+     */
+    private static void reportTimeToFirstFile(long firstFileMillis) {
+        Optional<Instant> start = ProcessHandle.current().info().startInstant();
+        if (firstFileMillis >= 0 && start.isPresent()) {
+            System.err.println("First file ready " + (firstFileMillis - start.get().toEpochMilli()) + " ms after JVM start");
+        }
+    }
+
+    /** Returns if the {@code .ts} file of every input exists. */
+    private static boolean outputsExist(Map<String, File> inputFileMap) {
+        for (String path : inputFileMap.keySet()) {
+            if (!getOutputFile(path, inputFileMap).toFile().isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void generateSyntheticCorpus(Path dir) throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(
+                Integer.getInteger(SYNTHETIC_FILES_PROPERTY, 1000),
+                Integer.getInteger(SYNTHETIC_FAN_OUT_PROPERTY, 3),
+                Double.parseDouble(System.getProperty(SYNTHETIC_COMMENT_DENSITY_PROPERTY, "0.5")),
+                Long.getLong(SYNTHETIC_SEED_PROPERTY, 0));
+        corpus.writeTo(dir);
+    }
+
+    /**
+     * Returns the directory input names are relative to: the closest common ancestor of the
+     * directories containing the roots, so that inputs sort by root first.
+     */
+    private static Path getBaseDirectory(List<Path> roots) {
+        Path base = null;
+        for (Path root : roots) {
+            Path parent = root.getParent() == null ? root : root.getParent();
+            if (base == null) {
+                base = parent;
+            } else {
+                while (!parent.startsWith(base)) {
+                    base = base.getParent();
+                }
+            }
+        }
+        return base;
+    }
+
+    /**
+     * Adds the inputs to the files to convert, keyed by their relative name, and maps the path of
+     * each converted file to the input it is generated from.
+     */
+    static void addInputs(List<InputLoader.Input> inputs, PathUtil pathUtil, Set<String> filesToConvert,
+                          List<SourceFile> sourceFiles, Map<String, File> inputFileMap) {
+        for (InputLoader.Input input : inputs) {
+            filesToConvert.add(input.name);
+            sourceFiles.add(SourceFile.fromCode(input.name, getFileText(input.path, input.content)));
+            inputFileMap.put(pathUtil.getFilePathWithoutExtension(input.name), input.path.toFile());
+        }
+    }
+
+    /** Returns the {@code .ts} file next to the input a converted file was generated from. */
+    static Path getOutputFile(String path, Map<String, File> inputFileMap) {
+        File jsFile = inputFileMap.get(path);
+        return new File(jsFile.getParentFile(), new File(path).getName() + ".ts").toPath();
+    }
+
+    static String getFileText(Path input, String fileContent) {
+        if (input.toString().contains("externs")) {
+            fileContent = fileContent.replaceAll("@externs", "");
+        }
+        if (input.getFileName().toString().contains("mux")) {
+            fileContent = fileContent.replaceAll("mp4: typeof muxjs\\.mp4", "")
+                    .replaceAll("@constructor", "");
+        }
+        return fileContent;
+    }
+}
@@ -0,0 +1,18 @@
+package shaka.ts.migrator;
+
+import java.util.List;
+
+/**
+ * Trades the module metadata of the files of one compilation for that of the files of other
+ * compilations running at the same time, see {@link ShardedConverter}.
+ *
+ * <p>{@link TypeScriptGenerator} calls it from its converting thread, in the same pipeline steps
+ * in every compilation, so an exchange can block until every compilation has reached it.
+ */
+interface ModuleExchange {
+  /**
+   * @param modules the modules of the files of this compilation, in source order
+   * @return the modules of the files of every other compilation, in source order
+   */
+  List<IncrementalCache.ModuleRecord> exchange(List<IncrementalCache.ModuleRecord> modules);
+}
@@ -63,19 +63,19 @@ class ModuleRenameLogger {
     }
   }
 
-  private Gson gson = new GsonBuilder().setPrettyPrinting().create();
-
   String generateModuleRewriteLog(
       Set<String> filesToConvert, Map<String, CollectModuleMetadata.FileModule> namespaceMap) {
     List<LogItem> items = new ArrayList<>();
     for (Map.Entry<String, CollectModuleMetadata.FileModule> entry : namespaceMap.entrySet()) {
       String file = entry.getValue().file;
       String defaultRename =
-          entry.getValue().exportedNamespacesToSymbols.getOrDefault("exports", "");
+          entry.getValue().getExportedNamespacesToSymbols().getOrDefault("exports", "");
       if (filesToConvert.contains(file)) {
         items.add(new LogItem(entry.getKey(), file, defaultRename));
       }
     }
+    // Created here rather than eagerly, so runs that do not ask for the log never load Gson.
+    Gson gson = new GsonBuilder().setPrettyPrinting().create();
     return gson.toJson(items);
   }
 }
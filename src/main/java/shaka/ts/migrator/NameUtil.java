@@ -4,7 +4,6 @@ import com.google.javascript.jscomp.AbstractCompiler;
 import com.google.javascript.jscomp.NodeUtil;
 import com.google.javascript.rhino.JSDocInfo;
 import com.google.javascript.rhino.Node;
-import com.google.javascript.rhino.Token;
 import java.util.Set;
 import javax.annotation.Nullable;
 
@@ -17,8 +16,10 @@ class NameUtil {
   }
 
   /** Returns the last identifier of a qualified name string. */
+  @Nullable
   String lastStepOfName(String name) {
-    return lastStepOfName(NodeUtil.newQName(compiler, name));
+    int dot = name.lastIndexOf('.');
+    return dot == -1 ? qualifiedName(name) : name.substring(dot + 1);
   }
 
   /** Returns the last identifier of a name node. */
@@ -32,7 +33,19 @@ class NameUtil {
    */
   @Nullable
   String findLongestNamePrefix(String name, Set<String> namespaces) {
-    return findLongestNamePrefix(NodeUtil.newQName(compiler, name), namespaces);
+    if (qualifiedName(name) == null) {
+      return null;
+    }
+    if (namespaces.contains(name)) {
+      return name;
+    }
+    for (int dot = name.lastIndexOf('.'); dot > 0; dot = name.lastIndexOf('.', dot - 1)) {
+      String prefix = name.substring(0, dot);
+      if (namespaces.contains(prefix)) {
+        return prefix;
+      }
+    }
+    return null;
   }
 
   /**
@@ -53,12 +66,29 @@ class NameUtil {
    * Returns the new name string with a prefix replaced with the new prefix. Returns input name if
    * prefix does not exist.
    */
+  @Nullable
   String replacePrefixInName(String name, String prefix, String newPrefix) {
-    Node nameNode = NodeUtil.newQName(compiler, name);
-    // Placeholder node to ensure name has a parent
-    Node placeholder = new Node(Token.EMPTY, nameNode);
-    replacePrefixInName(nameNode, prefix, newPrefix);
-    return placeholder.getFirstChild().getQualifiedName();
+    if (qualifiedName(name) == null || !isNamePrefix(prefix, name)) {
+      return qualifiedName(name);
+    }
+    return qualifiedName(newPrefix + name.substring(prefix.length()));
+  }
+
+  /** Returns if the prefix is the name itself or one of its dotted prefixes. */
+  static boolean isNamePrefix(String prefix, String name) {
+    return !prefix.isEmpty()
+        && name.startsWith(prefix)
+        && (name.length() == prefix.length() || name.charAt(prefix.length()) == '.');
+  }
+
+  /**
+   * Returns the name, or null if it has no qualified name, matching {@link Node#getQualifiedName}
+   * of the node built by {@link NodeUtil#newQName}: names with an empty first segment are not
+   * qualified names.
+   */
+  @Nullable
+  private static String qualifiedName(String name) {
+    return name.isEmpty() || name.charAt(0) == '.' ? null : name;
   }
 
   /**
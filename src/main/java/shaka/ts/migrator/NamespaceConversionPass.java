@@ -1,8 +1,6 @@
 package shaka.ts.migrator;
 
 import com.google.common.base.MoreObjects;
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 import com.google.javascript.jscomp.*;
 import com.google.javascript.jscomp.NodeTraversal.AbstractPreOrderCallback;
 import com.google.javascript.rhino.IR;
@@ -45,18 +43,18 @@ public final class NamespaceConversionPass implements CompilerPass {
 
   // Used for rewriting usages of imported symbols
   /** fileName, namespace -> local name */
-  private final Table<String, String, String> valueRewrite = HashBasedTable.create();
+  private final SymbolTable<String> valueRewrite;
   /** fileName, namespace -> local name */
-  private final Table<String, String, String> typeRewrite = HashBasedTable.create();
+  private final SymbolTable<String> typeRewrite;
 
   private final String alreadyConvertedPrefix;
 
   // Map from source file name and imported module local name to importSpecs, used to store
   // destructuring assignments like "const {a, b} = abModule;". Later on we use this map to rewrite
   // full module imports.
-  private final Table<String, String, Node> destructuringAssignments = HashBasedTable.create();
+  private final SymbolTable<Node> destructuringAssignments;
 
-  Table<String, String, String> getTypeRewrite() {
+  SymbolTable<String> getTypeRewrite() {
     return typeRewrite;
   }
 
@@ -67,6 +65,7 @@ public final class NamespaceConversionPass implements CompilerPass {
       Map<String, CollectModuleMetadata.FileModule> fileToModule,
       Map<String, CollectModuleMetadata.FileModule> namespaceToModule,
       NodeComments nodeComments,
+      SymbolInterner symbols,
       String alreadyConvertedPrefix) {
     this.compiler = compiler;
     this.pathUtil = pathUtil;
@@ -76,6 +75,10 @@ public final class NamespaceConversionPass implements CompilerPass {
     this.fileToModule = fileToModule;
     this.namespaceToModule = namespaceToModule;
     this.alreadyConvertedPrefix = alreadyConvertedPrefix;
+
+    this.valueRewrite = new SymbolTable<>(symbols);
+    this.typeRewrite = new SymbolTable<>(symbols);
+    this.destructuringAssignments = new SymbolTable<>(symbols);
   }
 
   @Override
@@ -84,6 +87,21 @@ public final class NamespaceConversionPass implements CompilerPass {
     NodeTraversal.traverse(compiler, root, new DestructuringCollector());
   }
 
+  /** Returns the steps of {@link #process}, for {@link PassManager}. */
+  List<PassManager.Step> getSteps() {
+    return Arrays.asList(
+        PassManager.traversal(
+            "ModuleExportConverter",
+            new ModuleExportConverter(),
+            EnumSet.of(PassManager.Metadata.MODULE_METADATA, PassManager.Metadata.COMMENTS),
+            EnumSet.of(PassManager.Metadata.MODULE_REWRITES, PassManager.Metadata.COMMENTS)),
+        PassManager.traversal(
+            "DestructuringCollector",
+            new DestructuringCollector(),
+            EnumSet.noneOf(PassManager.Metadata.class),
+            EnumSet.of(PassManager.Metadata.DESTRUCTURING)));
+  }
+
   /**
    * Converts "exports" assignments into TypeScript export statements. This also builds a map of all
    * the declared modules.
@@ -152,7 +170,7 @@ public final class NamespaceConversionPass implements CompilerPass {
               break;
             }
             CollectModuleMetadata.FileModule module = fileToModule.get(fileName);
-            Map<String, String> symbols = module.exportedNamespacesToSymbols;
+            Map<String, String> symbols = module.getExportedNamespacesToSymbols();
             String exportedNamespace = nameUtil.findLongestNamePrefix(child, symbols.keySet());
             if (exportedNamespace != null) {
               String localName = symbols.get(exportedNamespace);
@@ -172,7 +190,7 @@ public final class NamespaceConversionPass implements CompilerPass {
           }
           CollectModuleMetadata.FileModule module = fileToModule.get(fileName);
           Node lhs = child.getFirstChild();
-          Map<String, String> symbols = module.exportedNamespacesToSymbols;
+          Map<String, String> symbols = module.getExportedNamespacesToSymbols();
 
           // We export the longest valid prefix
           String exportedNamespace = nameUtil.findLongestNamePrefix(lhs, symbols.keySet());
@@ -236,15 +254,24 @@ public final class NamespaceConversionPass implements CompilerPass {
 
   /** Rewrites variable names used in the file to correspond to the newly imported symbols. */
   private class ModuleImportRewriter extends AbstractPreOrderCallback {
+    /** fileName -> namespace -> local name, the rows of {@link #valueRewrite}. */
+    private final Map<String, Map<String, String>> rewrites = new HashMap<>();
+
+    private ModuleImportRewriter() {
+      valueRewrite.forEach(
+          (file, namespace, localName) ->
+              rewrites.computeIfAbsent(file, k -> new HashMap<>()).put(namespace, localName));
+    }
+
     @Override
     public boolean shouldTraverse(NodeTraversal t, Node n, Node parent) {
       // Rewrite all imported variable name usages
       if (n.isName() || n.isGetProp()) {
-        if (!valueRewrite.containsRow(n.getSourceFileName())) {
+        Map<String, String> rewriteMap = rewrites.get(n.getSourceFileName());
+        if (rewriteMap == null) {
           return true;
         }
 
-        Map<String, String> rewriteMap = valueRewrite.rowMap().get(n.getSourceFileName());
         String importedNamespace = nameUtil.findLongestNamePrefix(n, rewriteMap.keySet());
         if (importedNamespace != null) {
           nameUtil.replacePrefixInName(n, importedNamespace, rewriteMap.get(importedNamespace));
@@ -396,7 +423,7 @@ public final class NamespaceConversionPass implements CompilerPass {
     // If not imported then this is a side effect only import.
     boolean imported = false;
 
-    if (moduleImport.module.importedNamespacesToSymbols.containsKey(
+    if (moduleImport.module.getImportedNamespacesToSymbols().containsKey(
         moduleImport.requiredNamespace)) {
       // import {value as localName} from "./file"
       Node importSpec = new Node(Token.IMPORT_SPEC, IR.name(moduleImport.moduleSuffix));
@@ -421,7 +448,7 @@ public final class NamespaceConversionPass implements CompilerPass {
       localName = moduleImport.backupName;
     }
 
-    if (moduleImport.module.providesObjectChildren.get(moduleImport.requiredNamespace).size() > 0) {
+    if (!moduleImport.module.getProvidesObjectChildren(moduleImport.requiredNamespace).isEmpty()) {
       // import * as var from "./file"
       Node importNode =
           new Node(
@@ -433,7 +460,7 @@ public final class NamespaceConversionPass implements CompilerPass {
       imported = true;
 
       for (String child :
-          moduleImport.module.providesObjectChildren.get(moduleImport.requiredNamespace)) {
+          moduleImport.module.getProvidesObjectChildren(moduleImport.requiredNamespace)) {
         if (!valueRewrite.contains(n.getSourceFileName(), child)) {
           String fileName = n.getSourceFileName();
           registerLocalSymbol(
@@ -512,8 +539,7 @@ public final class NamespaceConversionPass implements CompilerPass {
         nodeToImport.addChildToBack(Node.newString(Token.STRING_KEY, localName));
       }
       // For non destructuring imports, it is safe to assume there's only one localName
-    } else if (moduleImport.module.namespaceHasDefaultExport.getOrDefault(
-        moduleImport.requiredNamespace, false)) {
+    } else if (moduleImport.module.hasDefaultExport(moduleImport.requiredNamespace)) {
       // If it has a default export then use `import foo from 'goog:bar';`
       nodeToImport = Node.newString(Token.NAME, moduleImport.localNames.get(0));
     } else {
@@ -0,0 +1,177 @@
+package shaka.ts.migrator;
+
+import javax.annotation.Nullable;
+
+/**
+ * An index of dotted names, such as Closure namespaces, stored one segment per level.
+ *
+ * <p>Lookups take the queried name as a plain string and compare segments in place, so answering
+ * a query costs time proportional to the length of the name and allocates nothing.
+ */
+final class NamespaceTrie<V> {
+  private final TrieNode<V> root = new TrieNode<>();
+
+  /** Adds a dotted name, replacing the value already associated with it. */
+  void put(String name, V value) {
+    TrieNode<V> node = root;
+    int start = 0;
+    while (true) {
+      int end = segmentEnd(name, start);
+      node = node.getOrAddChild(name.substring(start, end));
+      if (end == name.length()) {
+        break;
+      }
+      start = end + 1;
+    }
+    node.terminal = true;
+    node.value = value;
+  }
+
+  /** Returns the value associated with a dotted name, or null if the name was never added. */
+  @Nullable
+  V get(String name) {
+    TrieNode<V> node = root;
+    int start = 0;
+    while (node != null) {
+      int end = segmentEnd(name, start);
+      node = node.getChild(name, start, end);
+      if (end == name.length()) {
+        return node != null && node.terminal ? node.value : null;
+      }
+      start = end + 1;
+    }
+    return null;
+  }
+
+  /**
+   * Returns if the dotted name is an added name or one of their dotted prefixes. For example, if
+   * {@code a.b.c} was added then {@code a} and {@code a.b} are prefixes, while {@code a.bc} is not.
+   */
+  boolean isPrefixOfAnyName(String name) {
+    TrieNode<V> node = root;
+    int start = 0;
+    while (true) {
+      int end = segmentEnd(name, start);
+      node = node.getChild(name, start, end);
+      if (node == null) {
+        return false;
+      }
+      if (end == name.length()) {
+        // Nodes are only created on the way to an added name.
+        return true;
+      }
+      start = end + 1;
+    }
+  }
+
+  /**
+   * Returns the length of the longest added name that is the name itself or one of its dotted
+   * prefixes, or -1 if there is none. For example, if {@code a.b} was added then the result for
+   * {@code a.b.c} is 3, while {@code a.bc} has no prefix.
+   */
+  int longestPrefixLength(String name) {
+    TrieNode<V> node = root;
+    int longest = -1;
+    int start = 0;
+    while (true) {
+      int end = segmentEnd(name, start);
+      node = node.getChild(name, start, end);
+      if (node == null) {
+        return longest;
+      }
+      if (node.terminal) {
+        longest = end;
+      }
+      if (end == name.length()) {
+        return longest;
+      }
+      start = end + 1;
+    }
+  }
+
+  private static int segmentEnd(String name, int start) {
+    int dot = name.indexOf('.', start);
+    return dot == -1 ? name.length() : dot;
+  }
+
+  /** A trie level, keeping its children in a small open addressing table keyed by segment. */
+  private static final class TrieNode<V> {
+    private static final int INITIAL_CAPACITY = 4;
+
+    @Nullable private String[] segments;
+    @Nullable private TrieNode<V>[] children;
+    private int size;
+
+    boolean terminal;
+    @Nullable V value;
+
+    /** Returns the child for the segment {@code name[start, end)}, or null if there is none. */
+    @Nullable
+    TrieNode<V> getChild(String name, int start, int end) {
+      if (segments == null) {
+        return null;
+      }
+      int length = end - start;
+      int mask = segments.length - 1;
+      for (int i = spread(hash(name, start, end)) & mask; segments[i] != null; i = (i + 1) & mask) {
+        String segment = segments[i];
+        if (segment.length() == length && name.regionMatches(start, segment, 0, length)) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    TrieNode<V> getOrAddChild(String segment) {
+      TrieNode<V> child = getChild(segment, 0, segment.length());
+      if (child != null) {
+        return child;
+      }
+      if (segments == null) {
+        allocate(INITIAL_CAPACITY);
+      } else if (2 * (size + 1) > segments.length) {
+        String[] oldSegments = segments;
+        TrieNode<V>[] oldChildren = children;
+        allocate(2 * oldSegments.length);
+        for (int i = 0; i < oldSegments.length; i++) {
+          if (oldSegments[i] != null) {
+            insert(oldSegments[i], oldChildren[i]);
+          }
+        }
+      }
+      child = new TrieNode<>();
+      insert(segment, child);
+      size++;
+      return child;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+      segments = new String[capacity];
+      children = (TrieNode<V>[]) new TrieNode<?>[capacity];
+    }
+
+    private void insert(String segment, TrieNode<V> child) {
+      int mask = segments.length - 1;
+      int i = spread(segment.hashCode()) & mask;
+      while (segments[i] != null) {
+        i = (i + 1) & mask;
+      }
+      segments[i] = segment;
+      children[i] = child;
+    }
+
+    /** Same as {@code name.substring(start, end).hashCode()}, without the substring. */
+    private static int hash(String name, int start, int end) {
+      int h = 0;
+      for (int i = start; i < end; i++) {
+        h = 31 * h + name.charAt(i);
+      }
+      return h;
+    }
+
+    private static int spread(int h) {
+      return h ^ (h >>> 16);
+    }
+  }
+}
@@ -1,30 +1,73 @@
 package shaka.ts.migrator;
 
 import com.google.javascript.rhino.Node;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
-/** Represents the mapping from an AST Node to its corresponding comment. */
+/**
+ * Represents the mapping from an AST Node to its corresponding comment.
+ *
+ * <p>Nodes are keyed by identity. A node's comment is kept as the fragments it was built from and
+ * only joined when it is read, so piling many comments onto one node stays linear.
+ */
 class NodeComments {
-  private final Map<Node, String> nodeToComment = new HashMap<>();
+  /** Either a single fragment as a {@code String} or several as a {@code List<String>}. */
+  private Map<Node, Object> nodeToComment;
+
+  NodeComments() {
+    this(0);
+  }
+
+  /** @param expectedComments the number of comments expected to be linked */
+  NodeComments(int expectedComments) {
+    this.nodeToComment = new IdentityHashMap<>(expectedComments);
+  }
+
+  /** Resizes the table for {@code expectedComments} if nothing has been added yet. */
+  void presize(int expectedComments) {
+    if (nodeToComment.isEmpty()) {
+      nodeToComment = new IdentityHashMap<>(expectedComments);
+    }
+  }
 
   void addComment(Node n, String comment) {
-    if (hasComment(n)) {
-      comment = getComment(n) + comment;
+    Object fragments = nodeToComment.get(n);
+    if (fragments == null) {
+      nodeToComment.put(n, comment);
+    } else {
+      nodeToComment.put(n, append(fragments, comment));
+    }
+  }
+
+  /** Adds all comments of {@code other}, as if each was added with {@link #addComment}. */
+  void addAll(NodeComments other) {
+    for (Map.Entry<Node, Object> entry : other.nodeToComment.entrySet()) {
+      addFragments(entry.getKey(), entry.getValue());
     }
-    setComment(n, comment);
   }
 
   void setComment(Node n, String comment) {
     nodeToComment.put(n, comment);
   }
 
+  /** Returns if no node has a comment. */
+  boolean isEmpty() {
+    return nodeToComment.isEmpty();
+  }
+
   boolean hasComment(Node n) {
     return nodeToComment.containsKey(n);
   }
 
   String getComment(Node n) {
-    return nodeToComment.get(n);
+    Object fragments = nodeToComment.get(n);
+    if (fragments == null || fragments instanceof String) {
+      return (String) fragments;
+    }
+    // Not cached: the code generators read comments of different files concurrently.
+    return String.join("", asList(fragments));
   }
 
   void clearComment(Node n) {
@@ -32,9 +75,9 @@ class NodeComments {
   }
 
   void moveComment(Node from, Node to) {
-    if (getComment(from) != null) {
-      addComment(to, getComment(from));
-      clearComment(from);
+    Object fragments = nodeToComment.remove(from);
+    if (fragments != null) {
+      addFragments(to, fragments);
     }
   }
 
@@ -43,4 +86,43 @@ class NodeComments {
     oldNode.getParent().replaceChild(oldNode, newNode);
     moveComment(oldNode, newNode);
   }
+
+  @SuppressWarnings("unchecked")
+  private void addFragments(Node n, Object fragments) {
+    Object existing = nodeToComment.get(n);
+    if (existing == null) {
+      nodeToComment.put(n, fragments);
+      return;
+    }
+    if (fragments instanceof String) {
+      nodeToComment.put(n, append(existing, (String) fragments));
+      return;
+    }
+    List<String> merged = existing instanceof String ? asList(existing) : (List<String>) existing;
+    merged.addAll(asList(fragments));
+    nodeToComment.put(n, merged);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object append(Object fragments, String comment) {
+    List<String> list;
+    if (fragments instanceof String) {
+      list = new ArrayList<>(4);
+      list.add((String) fragments);
+    } else {
+      list = (List<String>) fragments;
+    }
+    list.add(comment);
+    return list;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<String> asList(Object fragments) {
+    if (fragments instanceof String) {
+      List<String> list = new ArrayList<>(4);
+      list.add((String) fragments);
+      return list;
+    }
+    return (List<String>) fragments;
+  }
 }
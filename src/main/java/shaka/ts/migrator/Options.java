@@ -108,6 +108,59 @@ public class Options {
   )
   String absolutePathPrefix = "google3";
 
+  @Option(
+    name = "--threads",
+    usage =
+        "number of worker threads used to link comments and print the converted files (1 does "
+            + "both serially)",
+    metaVar = "THREADS"
+  )
+  int threads = 1;
+
+  @Option(
+    name = "--shards",
+    usage =
+        "number of shards converted concurrently, each by its own compiler (1 converts all "
+            + "files in a single compilation)",
+    metaVar = "SHARDS"
+  )
+  int shards = 1;
+
+  @Option(
+    name = "--incrementalCache",
+    usage =
+        "reuse the output of unchanged files from a previous run, keeping the state in this file",
+    metaVar = "INCREMENTAL_CACHE"
+  )
+  String incrementalCache = null;
+
+  @Option(
+    name = "--profile",
+    usage =
+        "output a JSON report of the time, CPU time, allocations and visited nodes of every "
+            + "conversion phase to this location",
+    metaVar = "PROFILE_REPORT"
+  )
+  String profileReport = null;
+
+  @Option(
+    name = "--outputManifest",
+    usage =
+        "skip writing converted files whose content is unchanged, recording the hashes of written "
+            + "files in this file",
+    metaVar = "OUTPUT_MANIFEST"
+  )
+  String outputManifest = null;
+
+  @Option(
+    name = "--externsStamp",
+    usage =
+        "when converting externs, skip the conversion if the externs and options are unchanged "
+            + "since they were last converted, as recorded in this file",
+    metaVar = "EXTERNS_STAMP"
+  )
+  String externsStamp = null;
+
   @Argument
   @Option(name = "--", handler = StopOptionHandler.class)
   List<String> arguments = new ArrayList<>();
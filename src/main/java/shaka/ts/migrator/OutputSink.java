@@ -0,0 +1,16 @@
+package shaka.ts.migrator;
+
+/**
+ * Receives the TypeScript code of every converted file as soon as it is printed, so that callers
+ * writing files or archives do not need to hold the output of the whole conversion.
+ *
+ * <p>{@link TypeScriptGenerator} passes files in source order from a single thread.
+ */
+interface OutputSink {
+  /**
+   * @param path the path of the converted file, without extension
+   * @param code the generated TypeScript code. It may be a view of a larger buffer, so sinks that
+   *     keep it beyond the call should copy it with {@code toString()}.
+   */
+  void accept(String path, CharSequence code);
+}
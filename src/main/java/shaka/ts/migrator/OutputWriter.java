@@ -0,0 +1,271 @@
+package shaka.ts.migrator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * Writes converted files concurrently as they are added, leaving files whose content did not change
+ * untouched so that their modification times stay valid for the tools that watch them.
+ *
+ * <p>Every file is written to a temporary file in the same directory and then renamed over the
+ * target, so readers never see a partial file. Contents are hashed and written straight from their
+ * characters, without encoding a whole file into a byte array first. An optional manifest records
+ * the hash, size and modification time of each file written, which lets later runs skip unchanged
+ * files without reading them back. Files that changed on disk since they were recorded are
+ * compared by content.
+ */
+final class OutputWriter {
+  /** Bumped whenever the layout of the manifest changes. */
+  private static final int FORMAT_VERSION = 1;
+
+  /** What the manifest knows about a file it wrote. */
+  private static final class Entry {
+    String hash;
+    long size;
+    long modifiedMillis;
+  }
+
+  private static final class Manifest {
+    int formatVersion = FORMAT_VERSION;
+    Map<String, Entry> entries = new TreeMap<>();
+  }
+
+  @Nullable private final Path manifestFile;
+  @Nullable private final ConversionProfile profile;
+  private final Manifest manifest;
+  private final Map<String, Entry> entries;
+  private final ExecutorService pool;
+  /** Bounds the number of files held in memory while waiting to be written. */
+  private final Semaphore pending;
+  /** The first failure to write a file, an IOException or a RuntimeException. */
+  private final AtomicReference<Exception> failure = new AtomicReference<>();
+  private final AtomicInteger written = new AtomicInteger();
+  private final AtomicInteger unchanged = new AtomicInteger();
+
+  /**
+   * @param manifestFile where the manifest is kept between runs, or null to compare every file
+   *     with its previous content
+   * @param threads the number of files written concurrently
+   * @param profile records a "write" phase per file when not null
+   */
+  OutputWriter(@Nullable Path manifestFile, int threads, @Nullable ConversionProfile profile) {
+    this.manifestFile = manifestFile;
+    this.profile = profile;
+    this.manifest = loadManifest();
+    this.entries = new ConcurrentHashMap<>(manifest.entries);
+    this.pool = Executors.newFixedThreadPool(threads);
+    this.pending = new Semaphore(2 * threads);
+  }
+
+  /**
+   * Queues the file to be written if its content differs from the file already on disk. Blocks
+   * while too many files are waiting to be written.
+   */
+  void add(Path path, CharSequence content) {
+    pending.acquireUninterruptibly();
+    pool.execute(
+        () -> {
+          try {
+            ConversionProfile.Span span =
+                profile == null ? null : profile.start("write", path.getFileName().toString());
+            writeFile(path, content);
+            if (span != null) {
+              span.finish(null);
+            }
+          } catch (IOException e) {
+            failure.compareAndSet(null, new IOException("Unable to write to file " + path, e));
+          } catch (RuntimeException e) {
+            failure.compareAndSet(
+                null, new IllegalStateException("Unable to write to file " + path, e));
+          } finally {
+            pending.release();
+          }
+        });
+  }
+
+  /**
+   * Waits for all queued files to be written and saves the manifest. Rethrows the first failure
+   * to write a file, if any.
+   */
+  void finish() throws IOException {
+    pool.shutdown();
+    try {
+      while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+        // Keep waiting, writes can not be abandoned half way.
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing outputs", e);
+    }
+    Exception e = failure.get();
+    if (e instanceof IOException) {
+      throw (IOException) e;
+    }
+    if (e != null) {
+      throw (RuntimeException) e;
+    }
+
+    if (manifestFile != null) {
+      manifest.entries = new TreeMap<>(entries);
+      String content = new Gson().toJson(manifest);
+      Files.createDirectories(manifestFile.toAbsolutePath().getParent());
+      replace(manifestFile, content);
+    }
+  }
+
+  /** Returns the number of files written, once {@link #finish} returned. */
+  int getWritten() {
+    return written.get();
+  }
+
+  /** Returns the number of files left untouched because they did not change. */
+  int getUnchanged() {
+    return unchanged.get();
+  }
+
+  private void writeFile(Path path, CharSequence content) throws IOException {
+    Entry digest = digest(content);
+    String key = path.toAbsolutePath().normalize().toString();
+    if (isUnchanged(path, digest.size, digest.hash, entries.get(key))) {
+      unchanged.incrementAndGet();
+    } else {
+      replace(path, content);
+      written.incrementAndGet();
+    }
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    Entry entry = new Entry();
+    entry.hash = digest.hash;
+    entry.size = attributes.size();
+    entry.modifiedMillis = attributes.lastModifiedTime().toMillis();
+    entries.put(key, entry);
+  }
+
+  /** Returns if the file on disk already has the content. */
+  private static boolean isUnchanged(Path path, long size, String hash, @Nullable Entry entry)
+      throws IOException {
+    if (!Files.isRegularFile(path)) {
+      return false;
+    }
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    if (attributes.size() != size) {
+      return false;
+    }
+    if (entry != null
+        && entry.size == attributes.size()
+        && entry.modifiedMillis == attributes.lastModifiedTime().toMillis()) {
+      // Nothing touched the file since it was recorded.
+      return entry.hash.equals(hash);
+    }
+    return Hashing.sha256().hashBytes(Files.readAllBytes(path)).toString().equals(hash);
+  }
+
+  /** Replaces the file with the content through a rename, so it is never partially written. */
+  private static void replace(Path path, CharSequence content) throws IOException {
+    Path temp =
+        Files.createTempFile(
+            path.toAbsolutePath().getParent(), "." + path.getFileName().toString(), ".tmp");
+    try {
+      try (Writer writer =
+          new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temp), UTF_8))) {
+        writer.append(content);
+      }
+      try {
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Returns the SHA-256 and size of the UTF-8 encoding of {@code content}, encoding it in chunks.
+   * The modification time is left unset.
+   */
+  private static Entry digest(CharSequence content) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    // Same replacement as OutputStreamWriter, so the digest matches the bytes that are written.
+    CharsetEncoder encoder =
+        UTF_8
+            .newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    CharBuffer in = CharBuffer.wrap(content);
+    ByteBuffer out = ByteBuffer.allocate(8192);
+    Entry entry = new Entry();
+    CoderResult result;
+    do {
+      result = encoder.encode(in, out, true);
+      entry.size += update(digest, out);
+    } while (result.isOverflow());
+    do {
+      result = encoder.flush(out);
+      entry.size += update(digest, out);
+    } while (result.isOverflow());
+    entry.hash = HashCode.fromBytes(digest.digest()).toString();
+    return entry;
+  }
+
+  /** Feeds the bytes encoded into {@code out} to the digest and returns how many there were. */
+  private static int update(MessageDigest digest, ByteBuffer out) {
+    out.flip();
+    int count = out.remaining();
+    digest.update(out);
+    out.clear();
+    return count;
+  }
+
+  private Manifest loadManifest() {
+    if (manifestFile != null && Files.isRegularFile(manifestFile)) {
+      try (Reader reader = Files.newBufferedReader(manifestFile, UTF_8)) {
+        Manifest manifest = new Gson().fromJson(reader, Manifest.class);
+        if (manifest != null
+            && manifest.formatVersion == FORMAT_VERSION
+            && manifest.entries != null) {
+          return manifest;
+        }
+      } catch (IOException | JsonParseException e) {
+        System.err.println(
+            "Ignoring unreadable output manifest " + manifestFile + ": " + e.getMessage());
+      }
+    }
+    return new Manifest();
+  }
+}
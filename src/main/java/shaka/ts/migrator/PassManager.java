@@ -0,0 +1,188 @@
+package shaka.ts.migrator;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.javascript.jscomp.AbstractCompiler;
+import com.google.javascript.jscomp.CompilerPass;
+import com.google.javascript.jscomp.NodeTraversal;
+import com.google.javascript.jscomp.NodeTraversal.Callback;
+import com.google.javascript.rhino.Node;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Runs the steps of the conversion pipeline in the order they were added, which must respect their
+ * declared dependencies, and reports the traversals and time of each.
+ *
+ * <p>Each step declares the metadata it reads and writes, and {@link #add} rejects a step reading
+ * metadata no earlier step writes. Every step walks the tree on its own.
+ */
+final class PassManager implements CompilerPass {
+  /** State shared between steps, besides the AST itself. */
+  enum Metadata {
+    /** The modules, namespaces and exports collected by {@link CollectModuleMetadata}. */
+    MODULE_METADATA,
+    /** The comments attached to nodes, see {@link NodeComments}. */
+    COMMENTS,
+    /** Exported symbols and the rewrites of imported names, see {@link NamespaceConversionPass}. */
+    MODULE_REWRITES,
+    /** Top level destructuring assignments, see {@link NamespaceConversionPass}. */
+    DESTRUCTURING,
+    /** The symbol table and the imports needed for type names, see {@link TypeAnnotationPass}. */
+    TYPE_REWRITES,
+    /** Declared TypeScript types of nodes. */
+    TYPE_ANNOTATIONS,
+    /** Access modifiers of nodes. */
+    ACCESS_MODIFIERS,
+  }
+
+  /** A single step of the pipeline, either a traversal or an opaque action. */
+  static final class Step {
+    private final String name;
+    @Nullable private final Callback callback;
+    @Nullable private final CompilerPass action;
+    @Nullable private final IntSupplier actionTraversals;
+    private final ImmutableSet<Metadata> reads;
+    private final ImmutableSet<Metadata> writes;
+
+    private Step(
+        String name,
+        @Nullable Callback callback,
+        @Nullable CompilerPass action,
+        @Nullable IntSupplier actionTraversals,
+        Set<Metadata> reads,
+        Set<Metadata> writes) {
+      this.name = name;
+      this.callback = callback;
+      this.action = action;
+      this.actionTraversals = actionTraversals;
+      this.reads = ImmutableSet.copyOf(reads);
+      this.writes = ImmutableSet.copyOf(writes);
+    }
+  }
+
+  /** Returns a step walking the whole tree with the callback. */
+  static Step traversal(
+      String name, Callback callback, Set<Metadata> reads, Set<Metadata> writes) {
+    return new Step(name, callback, null, null, reads, writes);
+  }
+
+  /**
+   * Returns a step running a pass. The supplier returns the number of traversals the pass did, once
+   * it ran.
+   */
+  static Step action(
+      String name,
+      CompilerPass pass,
+      IntSupplier traversals,
+      Set<Metadata> reads,
+      Set<Metadata> writes) {
+    return new Step(name, null, pass, traversals, reads, writes);
+  }
+
+  private final AbstractCompiler compiler;
+  private final List<Step> steps = new ArrayList<>();
+  private final StringBuilder report = new StringBuilder();
+  private int traversals = 0;
+  private long elapsedNanos = 0;
+  @Nullable private ConversionProfile profile = null;
+
+  PassManager(AbstractCompiler compiler) {
+    this.compiler = compiler;
+  }
+
+  /** Measures every step in the profile, counting the nodes traversals visit. */
+  void setProfile(ConversionProfile profile) {
+    this.profile = profile;
+  }
+
+  void add(Step step) {
+    Set<Metadata> written = EnumSet.noneOf(Metadata.class);
+    for (Step previous : steps) {
+      written.addAll(previous.writes);
+    }
+    written.addAll(step.writes);
+    for (Metadata metadata : step.reads) {
+      if (!written.contains(metadata)) {
+        throw new IllegalStateException(
+            step.name + " reads " + metadata + " before any step writes it");
+      }
+    }
+    steps.add(step);
+  }
+
+  void addAll(List<Step> steps) {
+    for (Step step : steps) {
+      add(step);
+    }
+  }
+
+  @Override
+  public void process(Node externs, Node root) {
+    for (Step step : steps) {
+      run(step, externs, root);
+    }
+  }
+
+  private void run(Step step, Node externs, Node root) {
+    ConversionProfile.Span span = profile == null ? null : profile.start(step.name);
+    long start = System.nanoTime();
+    int count;
+    Long visited = null;
+    if (step.action != null) {
+      step.action.process(externs, root);
+      count = step.actionTraversals.getAsInt();
+    } else {
+      if (profile != null) {
+        CountingCallback counting = new CountingCallback(step.callback);
+        NodeTraversal.traverse(compiler, root, counting);
+        visited = counting.visits;
+      } else {
+        NodeTraversal.traverse(compiler, root, step.callback);
+      }
+      count = 1;
+    }
+    long elapsed = System.nanoTime() - start;
+    if (span != null) {
+      span.finish(visited);
+    }
+
+    report.append(
+        String.format(
+            "%s: %d traversal%s, %.1f ms%n",
+            step.name, count, count == 1 ? "" : "s", elapsed / 1e6));
+    traversals += count;
+    elapsedNanos += elapsed;
+  }
+
+  /** Counts the nodes a callback visits. */
+  private static final class CountingCallback implements Callback {
+    private final Callback delegate;
+    long visits = 0;
+
+    CountingCallback(Callback delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean shouldTraverse(NodeTraversal t, Node n, Node parent) {
+      return delegate.shouldTraverse(t, n, parent);
+    }
+
+    @Override
+    public void visit(NodeTraversal t, Node n, Node parent) {
+      visits++;
+      delegate.visit(t, n, parent);
+    }
+  }
+
+  /** Returns the traversal count and elapsed time of every step that ran, one per line. */
+  String getReport() {
+    return report
+        + String.format(
+            "Total: %d traversals, %.1f ms%n", traversals, elapsedNanos / 1e6);
+  }
+}
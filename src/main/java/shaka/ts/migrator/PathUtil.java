@@ -39,16 +39,20 @@ public class PathUtil {
     referencedFile = removeExtension(referencedFile);
     String relativePath = getRelativePath(sourceFile + "/..", referencedFile);
     if (relativePath.startsWith("../..")) {
-      return absolutePrefix + "/" + getRelativePath(rootpath, referencedFile);
+      return absolutePrefix + "/" + getRelativePath(".", referencedFile);
     } else {
       return relativePath.startsWith(".") ? relativePath : "./" + relativePath;
     }
   }
 
-  /** Returns the relative path between the source file and the referenced module file. */
+  /**
+   * Returns the relative path between the source file and the referenced module file. Relative
+   * paths are resolved against the root, which file names are relative to.
+   */
   String getRelativePath(String from, String to) {
-    Path fromPath = Paths.get(from).toAbsolutePath().normalize();
-    Path toPath = Paths.get(to).toAbsolutePath().normalize();
+    Path root = Paths.get(rootpath).toAbsolutePath();
+    Path fromPath = root.resolve(from).normalize();
+    Path toPath = root.resolve(to).normalize();
     Path importPath = fromPath.relativize(toPath).normalize();
     return importPath.toString();
   }
@@ -8,10 +8,6 @@ import com.google.javascript.jscomp.NodeTraversal;
 import com.google.javascript.jscomp.NodeUtil;
 import com.google.javascript.rhino.IR;
 import com.google.javascript.rhino.Node;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
@@ -23,8 +19,9 @@ import javax.annotation.Nullable;
 public final class RemoveGoogScopePass extends AbstractTopLevelCallback implements CompilerPass {
 
   private final AbstractCompiler compiler;
-  private final Set<String> providedNamespaces = new HashSet<>();
-  private final Map<String, String> aliasToProvidedNamespace = new HashMap<>();
+  /** Namespaces of goog.provide and goog.require calls seen so far, values are unused. */
+  private final NamespaceTrie<Boolean> providedNamespaces = new NamespaceTrie<>();
+  private final NamespaceTrie<String> aliasToProvidedNamespace = new NamespaceTrie<>();
 
   RemoveGoogScopePass(AbstractCompiler compiler) {
     this.compiler = compiler;
@@ -51,7 +48,7 @@ public final class RemoveGoogScopePass extends AbstractTopLevelCallback implemen
       case "goog.provide":
       case "goog.require":
         // Register the goog.provide/require namespaces, so that we can remove any aliases.
-        providedNamespaces.add(maybeCallNode.getLastChild().getString());
+        providedNamespaces.put(maybeCallNode.getLastChild().getString(), Boolean.TRUE);
         return;
       case "goog.scope":
         rewriteGoogScope(n);
@@ -141,8 +138,9 @@ public final class RemoveGoogScopePass extends AbstractTopLevelCallback implemen
     if (rhs == null) { // var foo;
       return stillAttached;
     }
-    if (isInProvidedNamespace(rhs)) {
-      aliasToProvidedNamespace.put(lhs.getString(), rhs.getQualifiedName());
+    @Nullable String rhsQualifiedName = rhs.getQualifiedName();
+    if (rhsQualifiedName != null && providedNamespaces.isPrefixOfAnyName(rhsQualifiedName)) {
+      aliasToProvidedNamespace.put(lhs.getString(), rhsQualifiedName);
       Node next = assign.getParent().getNext();
       assign.detach();
       return new RewriteStatus(next);
@@ -150,16 +148,6 @@ public final class RemoveGoogScopePass extends AbstractTopLevelCallback implemen
     return stillAttached;
   }
 
-  private boolean isInProvidedNamespace(Node node) {
-    for (String providedNamespace : providedNamespaces) {
-      @Nullable String rhsQualifiedName = node.getQualifiedName();
-      if ((rhsQualifiedName != null) && providedNamespace.startsWith(node.getQualifiedName())) {
-        return true;
-      }
-    }
-    return false;
-  }
-
   private void maybeReassignAlias(Node assign) {
     Node lhs = assign.getFirstChild();
     if (!lhs.isGetProp()) {
@@ -176,9 +164,8 @@ public final class RemoveGoogScopePass extends AbstractTopLevelCallback implemen
     }
 
     checkNotNull(alias, "Missing name for alias");
-    if (aliasToProvidedNamespace.containsKey(alias)) {
-      String providedNamespace = aliasToProvidedNamespace.get(alias);
-
+    @Nullable String providedNamespace = aliasToProvidedNamespace.get(alias);
+    if (providedNamespace != null) {
       String suffix = lhs.getQualifiedName().substring(alias.length());
       Node fullName = NodeUtil.newQName(compiler, providedNamespace + suffix);
       assign.replaceChild(lhs, fullName);
@@ -0,0 +1,243 @@
+package shaka.ts.migrator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.javascript.jscomp.SourceFile;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Converts a set of files in shards, each compiled by its own {@link TypeScriptGenerator} on its
+ * own thread, so that no compilation holds the whole tree.
+ *
+ * <p>The shards are converted at the same time and trade the module metadata of their files twice,
+ * see {@link ModuleExchange}: once it is collected, before any shard converts its namespaces, and
+ * again once {@link TypeConversionPass} has added type aliases to it, before any shard converts
+ * type names. Each shard restores the metadata of the others the same way {@link
+ * IncrementalConverter} restores the metadata of unchanged files, so every file is compiled and
+ * converted once. Files are split into contiguous shards, and collected results are returned in
+ * source order.
+ */
+final class ShardedConverter {
+  private final Options opts;
+  private final PathUtil pathUtil;
+  /** Where the shards report errors, stderr unless set. */
+  private PrintStream errStream = System.err;
+  private final AtomicInteger errorCount = new AtomicInteger();
+  /** Shared by all shards, null unless profiling. */
+  @Nullable private ConversionProfile profile;
+
+  ShardedConverter(Options opts) {
+    this.opts = opts;
+    this.pathUtil = new PathUtil(opts.root, opts.absolutePathPrefix);
+    this.profile = opts.profileReport == null ? null : new ConversionProfile();
+  }
+
+  /** Makes every shard report its errors to {@code errStream} rather than to stderr. */
+  void setErrorStream(PrintStream errStream) {
+    this.errStream = errStream;
+  }
+
+  /** Returns the number of errors the shards reported so far. */
+  int getErrorCount() {
+    return errorCount.get();
+  }
+
+  /** Records the phases of all shards in a profile shared with other runs. */
+  void setProfile(ConversionProfile profile) {
+    this.profile = profile;
+  }
+
+  /** Same as {@link TypeScriptGenerator#generateTypeScript}, converting in shards. */
+  TypeScriptGenerator.GentsResult convert(
+      Set<String> filesToConvert,
+      List<SourceFile> srcFiles,
+      List<SourceFile> externs,
+      boolean declareOnly) {
+    Map<String, String> outputs = new ConcurrentHashMap<>();
+    TypeScriptGenerator.GentsResult result =
+        convert(
+            filesToConvert,
+            srcFiles,
+            externs,
+            declareOnly,
+            (path, code) -> outputs.put(path, code.toString()));
+    for (SourceFile srcFile : srcFiles) {
+      String path = pathUtil.getFilePathWithoutExtension(srcFile.getName());
+      String output = outputs.get(path);
+      if (output != null) {
+        result.sourceFileMap.put(path, output);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Same as {@link TypeScriptGenerator#generateTypeScript(Set, List, List, boolean, OutputSink)},
+   * converting in shards. Files of different shards reach the sink interleaved, one at a time.
+   */
+  TypeScriptGenerator.GentsResult convert(
+      Set<String> filesToConvert,
+      List<SourceFile> srcFiles,
+      List<SourceFile> externs,
+      boolean declareOnly,
+      OutputSink sink) {
+    OutputSink sharedSink =
+        (path, code) -> {
+          synchronized (sink) {
+            sink.accept(path, code);
+          }
+        };
+    List<List<SourceFile>> shards = partition(srcFiles, opts.shards);
+    MetadataExchange exchange = new MetadataExchange(shards.size());
+    ExecutorService pool = Executors.newFixedThreadPool(shards.size());
+    try {
+      List<Callable<TypeScriptGenerator.GentsResult>> converters = new ArrayList<>();
+      for (int i = 0; i < shards.size(); i++) {
+        List<SourceFile> shard = shards.get(i);
+        ModuleExchange shardExchange = exchange.forShard(i);
+        converters.add(
+            () -> {
+              TypeScriptGenerator gents = new TypeScriptGenerator(opts);
+              gents.setErrorStream(errStream);
+              gents.setModuleExchange(shardExchange);
+              if (profile != null) {
+                gents.setProfile(profile);
+              }
+              try {
+                return gents.generateTypeScript(
+                    filesToConvert, shard, externs, declareOnly, sharedSink);
+              } catch (RuntimeException | Error e) {
+                // Releases the shards waiting for this one to exchange its metadata.
+                exchange.abort(e);
+                throw e;
+              } finally {
+                errorCount.addAndGet(gents.getErrorCount());
+              }
+            });
+      }
+
+      invokeAll(pool, converters);
+      TypeScriptGenerator.GentsResult merged = new TypeScriptGenerator.GentsResult();
+      if (opts.moduleRewriteLog != null) {
+        merged.moduleRewriteLog =
+            new TypeScriptGenerator(opts)
+                .generateModuleRewriteLog(filesToConvert, exchange.getModules());
+      }
+      merged.profile = profile;
+      return merged;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Hands the modules each shard passes to its {@link ModuleExchange} to every other shard, once
+   * all shards have passed theirs.
+   */
+  private static final class MetadataExchange {
+    private final CyclicBarrier barrier;
+    /** The modules of each shard in the current exchange. The barrier publishes them. */
+    private final List<List<IncrementalCache.ModuleRecord>> shardModules;
+    /** Why a shard failed, which the shards waiting for it report. */
+    @Nullable private volatile Throwable failure = null;
+
+    MetadataExchange(int shards) {
+      this.barrier = new CyclicBarrier(shards);
+      this.shardModules = new ArrayList<>(Collections.nCopies(shards, ImmutableList.of()));
+    }
+
+    ModuleExchange forShard(int shard) {
+      return modules -> {
+        shardModules.set(shard, modules);
+        await();
+        List<IncrementalCache.ModuleRecord> others = new ArrayList<>();
+        for (int i = 0; i < shardModules.size(); i++) {
+          if (i != shard) {
+            others.addAll(shardModules.get(i));
+          }
+        }
+        // No shard starts the next exchange before every shard read this one.
+        await();
+        return others;
+      };
+    }
+
+    /** Returns the modules of all shards from the last exchange, in source order. */
+    List<IncrementalCache.ModuleRecord> getModules() {
+      List<IncrementalCache.ModuleRecord> modules = new ArrayList<>();
+      for (List<IncrementalCache.ModuleRecord> shard : shardModules) {
+        modules.addAll(shard);
+      }
+      return modules;
+    }
+
+    /** Makes the shards waiting for the failed one, and any that reach an exchange later, fail. */
+    void abort(Throwable cause) {
+      failure = cause;
+      barrier.reset();
+    }
+
+    private void await() {
+      if (failure != null) {
+        throw new IllegalStateException("Another shard failed", failure);
+      }
+      try {
+        barrier.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while exchanging module metadata", e);
+      } catch (BrokenBarrierException e) {
+        throw new IllegalStateException("Another shard failed", failure != null ? failure : e);
+      }
+    }
+  }
+
+  /** Splits the files into at most {@code count} contiguous shards of about the same size. */
+  private static List<List<SourceFile>> partition(List<SourceFile> files, int count) {
+    int shardCount = Math.max(1, Math.min(count, files.size()));
+    List<List<SourceFile>> shards = new ArrayList<>();
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(
+          files.subList(
+              (int) ((long) files.size() * i / shardCount),
+              (int) ((long) files.size() * (i + 1) / shardCount)));
+    }
+    return shards;
+  }
+
+  /** Runs the tasks on the pool and returns their results in order, rethrowing any failure. */
+  private static <T> List<T> invokeAll(ExecutorService pool, List<Callable<T>> tasks) {
+    List<T> results = new ArrayList<>();
+    try {
+      for (Future<T> future : pool.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while converting shards", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    return results;
+  }
+}
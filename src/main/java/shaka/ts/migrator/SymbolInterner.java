@@ -0,0 +1,83 @@
+package shaka.ts.migrator;
+
+import java.util.Arrays;
+
+/**
+ * Assigns compact int IDs to the names seen during one conversion: file names, namespaces and
+ * local symbols alike. IDs are dense and start at 0, so they can key primitive tables such as
+ * {@link SymbolTable}.
+ *
+ * <p>Every distinct name is stored once, however many tables refer to it. Not thread safe: each
+ * {@link TypeScriptGenerator} owns its own interner.
+ */
+final class SymbolInterner {
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** id -> name */
+  private String[] names = new String[INITIAL_CAPACITY / 2];
+  /** Open addressing table of {@code id + 1}, with 0 marking an empty slot. */
+  private int[] slots = new int[INITIAL_CAPACITY];
+  private int size;
+
+  /** Returns the ID of {@code name}, assigning the next free one if the name is new. */
+  int intern(String name) {
+    int mask = slots.length - 1;
+    int i = spread(name.hashCode()) & mask;
+    for (int slot = slots[i]; slot != 0; slot = slots[i]) {
+      if (names[slot - 1].equals(name)) {
+        return slot - 1;
+      }
+      i = (i + 1) & mask;
+    }
+    int id = size++;
+    if (id == names.length) {
+      names = Arrays.copyOf(names, 2 * names.length);
+    }
+    names[id] = name;
+    slots[i] = id + 1;
+    if (2 * size > slots.length) {
+      rehash(2 * slots.length);
+    }
+    return id;
+  }
+
+  /** Returns the ID of {@code name}, or -1 if it was never interned. */
+  int find(String name) {
+    int mask = slots.length - 1;
+    for (int i = spread(name.hashCode()) & mask; slots[i] != 0; i = (i + 1) & mask) {
+      if (names[slots[i] - 1].equals(name)) {
+        return slots[i] - 1;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the name with the given ID. */
+  String name(int id) {
+    if (id < 0 || id >= size) {
+      throw new IndexOutOfBoundsException("Unknown symbol id " + id);
+    }
+    return names[id];
+  }
+
+  /** Returns the number of interned names. */
+  int size() {
+    return size;
+  }
+
+  private void rehash(int capacity) {
+    slots = new int[capacity];
+    int mask = capacity - 1;
+    for (int id = 0; id < size; id++) {
+      int i = spread(names[id].hashCode()) & mask;
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      slots[i] = id + 1;
+    }
+  }
+
+  private static int spread(int h) {
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,131 @@
+package shaka.ts.migrator;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * A table of values keyed by a file name and a dotted symbol name, such as the rewrites of the
+ * imported namespaces of each file.
+ *
+ * <p>Both names are interned in a shared {@link SymbolInterner} and the pair of IDs is packed into
+ * a single {@code long}, so cells live in two flat arrays instead of a map of maps, and a lookup
+ * hashes two cached string hash codes and one primitive key.
+ */
+final class SymbolTable<V> {
+  /** Receives the cells of a table, see {@link #forEach}. */
+  interface CellConsumer<V> {
+    void accept(String file, String symbol, V value);
+  }
+
+  private static final int INITIAL_CAPACITY = 16;
+  /** IDs are never negative, so no packed key has the sign bit set. */
+  private static final long EMPTY = -1L;
+
+  private final SymbolInterner interner;
+  private long[] keys;
+  private Object[] values;
+  private int size;
+
+  SymbolTable(SymbolInterner interner) {
+    this.interner = interner;
+    this.keys = new long[INITIAL_CAPACITY];
+    this.values = new Object[INITIAL_CAPACITY];
+    Arrays.fill(keys, EMPTY);
+  }
+
+  private SymbolTable(SymbolTable<V> other) {
+    this.interner = other.interner;
+    this.keys = other.keys.clone();
+    this.values = other.values.clone();
+    this.size = other.size;
+  }
+
+  /** Returns an independent copy of this table, sharing the interner. */
+  SymbolTable<V> copy() {
+    return new SymbolTable<>(this);
+  }
+
+  /** Associates {@code value} with the cell, replacing the value it had. */
+  void put(String file, String symbol, V value) {
+    long key = pack(interner.intern(file), interner.intern(symbol));
+    int i = indexOf(key);
+    if (keys[i] == EMPTY) {
+      keys[i] = key;
+      size++;
+    }
+    values[i] = value;
+    if (2 * size > keys.length) {
+      rehash(2 * keys.length);
+    }
+  }
+
+  /** Returns the value of the cell, or null if it has none or {@code file} is null. */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  V get(@Nullable String file, String symbol) {
+    int fileId = file == null ? -1 : interner.find(file);
+    int symbolId = fileId < 0 ? -1 : interner.find(symbol);
+    if (symbolId < 0) {
+      return null;
+    }
+    return (V) values[indexOf(pack(fileId, symbolId))];
+  }
+
+  boolean contains(@Nullable String file, String symbol) {
+    return get(file, symbol) != null;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Passes every cell to {@code consumer}, in no particular order. */
+  @SuppressWarnings("unchecked")
+  void forEach(CellConsumer<? super V> consumer) {
+    for (int i = 0; i < keys.length; i++) {
+      long key = keys[i];
+      if (key != EMPTY) {
+        consumer.accept(
+            interner.name((int) (key >>> 32)), interner.name((int) key), (V) values[i]);
+      }
+    }
+  }
+
+  /** Returns the slot holding {@code key}, or the empty slot where it would be inserted. */
+  private int indexOf(long key) {
+    int mask = keys.length - 1;
+    int i = spread(key) & mask;
+    while (keys[i] != EMPTY && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new long[capacity];
+    values = new Object[capacity];
+    Arrays.fill(keys, EMPTY);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int j = indexOf(oldKeys[i]);
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  private static long pack(int fileId, int symbolId) {
+    return ((long) fileId << 32) | (symbolId & 0xffffffffL);
+  }
+
+  private static int spread(long key) {
+    long h = key * 0x9e3779b97f4a7c15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
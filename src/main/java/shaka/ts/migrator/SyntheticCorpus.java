@@ -0,0 +1,356 @@
+package shaka.ts.migrator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.javascript.jscomp.SourceFile;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Generates a tree of Closure annotated JavaScript for benchmarks and load tests beyond the size of
+ * shaka-player. The same parameters always generate the same files.
+ *
+ * <p>Every file declares one type, {@code synth.p<package>.Type<index>}, in one of three styles:
+ * a goog.provide file with a {@code @constructor} function, an enum and a typedef; the same wrapped
+ * in a goog.scope block; or a goog.module exporting a class or a {@code @record} and an enum. Each
+ * file requires up to {@code fanOut} files generated before it, extends the first of them when it
+ * can, and uses the others in method signatures.
+ */
+final class SyntheticCorpus {
+  /** Files sharing a namespace prefix, so the number of namespaces grows with the corpus. */
+  private static final int FILES_PER_PACKAGE = 20;
+
+  private static final String[] WORDS = {
+    "buffered", "segment", "stream", "manifest", "period", "variant", "license", "request",
+    "timeline", "playhead", "network", "retry", "bandwidth", "estimate", "quality", "track"
+  };
+
+  private enum Style {
+    PROVIDE,
+    SCOPE,
+    MODULE_CLASS,
+    MODULE_RECORD
+  }
+
+  private final int fanOut;
+  private final double commentDensity;
+  private final Random random;
+  private final List<Style> styles = new ArrayList<>();
+  /** The files that are not goog.modules, in generation order. */
+  private final List<Integer> provideFiles = new ArrayList<>();
+  private final Map<String, String> files = new LinkedHashMap<>();
+
+  /**
+   * @param size the number of files
+   * @param fanOut the maximum number of files each file requires
+   * @param commentDensity the probability, between 0 and 1, that a declaration is documented with
+   *     prose on top of its type annotations
+   * @param seed selects one of the corpora with these parameters
+   */
+  SyntheticCorpus(int size, int fanOut, double commentDensity, long seed) {
+    this.fanOut = fanOut;
+    this.commentDensity = commentDensity;
+    this.random = new Random(seed);
+    for (int i = 0; i < size; i++) {
+      int roll = random.nextInt(20);
+      Style style =
+          roll < 8
+              ? Style.PROVIDE
+              : roll < 12 ? Style.SCOPE : roll < 17 ? Style.MODULE_CLASS : Style.MODULE_RECORD;
+      styles.add(style);
+      files.put(getPath(i), generateFile(i, style));
+      if (!isModule(style)) {
+        provideFiles.add(i);
+      }
+    }
+  }
+
+  /** Returns the generated code keyed by relative path, in generation order. */
+  Map<String, String> getFiles() {
+    return Collections.unmodifiableMap(files);
+  }
+
+  Set<String> getFileNames() {
+    return new LinkedHashSet<>(files.keySet());
+  }
+
+  /** Returns new source files, since a compilation takes ownership of its inputs. */
+  List<SourceFile> getSourceFiles() {
+    List<SourceFile> sourceFiles = new ArrayList<>();
+    for (Map.Entry<String, String> file : files.entrySet()) {
+      sourceFiles.add(SourceFile.fromCode(file.getKey(), file.getValue()));
+    }
+    return sourceFiles;
+  }
+
+  /** Writes the files under {@code dir}, for converting them like a checked out tree. */
+  void writeTo(Path dir) throws IOException {
+    for (Map.Entry<String, String> file : files.entrySet()) {
+      Path path = dir.resolve(file.getKey());
+      Files.createDirectories(path.getParent());
+      Files.write(path, file.getValue().getBytes(UTF_8));
+    }
+  }
+
+  private static String getPath(int i) {
+    return "p" + (i / FILES_PER_PACKAGE) + "/type" + i + ".js";
+  }
+
+  private static String getTypeName(int i) {
+    return "Type" + i;
+  }
+
+  /** Returns the namespace the file declares. */
+  private String getNamespace(int i) {
+    String prefix = "synth.p" + (i / FILES_PER_PACKAGE) + ".";
+    return isModule(styles.get(i)) ? prefix + "mod" + i : prefix + getTypeName(i);
+  }
+
+  private static boolean isModule(Style style) {
+    return style == Style.MODULE_CLASS || style == Style.MODULE_RECORD;
+  }
+
+  /** Returns up to {@code fanOut} distinct files before {@code i} that it can require. */
+  private List<Integer> pickDependencies(int i, Style style) {
+    // Files outside of goog.modules can only refer to goog.provide namespaces.
+    int candidates = isModule(style) ? i : provideFiles.size();
+    Set<Integer> dependencies = new LinkedHashSet<>();
+    while (dependencies.size() < Math.min(fanOut, candidates)) {
+      int pick = random.nextInt(candidates);
+      dependencies.add(isModule(style) ? pick : provideFiles.get(pick));
+    }
+    return new ArrayList<>(dependencies);
+  }
+
+  private String generateFile(int i, Style style) {
+    List<Integer> dependencies = pickDependencies(i, style);
+    StringBuilder sb = new StringBuilder();
+    switch (style) {
+      case PROVIDE:
+      case SCOPE:
+        generateProvideFile(sb, i, style == Style.SCOPE, dependencies);
+        break;
+      case MODULE_CLASS:
+      case MODULE_RECORD:
+        generateModuleFile(sb, i, style == Style.MODULE_RECORD, dependencies);
+        break;
+    }
+    return sb.toString();
+  }
+
+  private void generateProvideFile(
+      StringBuilder sb, int i, boolean inScope, List<Integer> dependencies) {
+    String ns = getNamespace(i);
+    sb.append("goog.provide('").append(ns).append("');\n");
+    sb.append("goog.provide('").append(ns).append(".Kind');\n\n");
+    for (int dependency : dependencies) {
+      sb.append("goog.require('").append(getNamespace(dependency)).append("');\n");
+    }
+    sb.append('\n');
+
+    String self = ns;
+    if (inScope) {
+      sb.append("goog.scope(function() {\n");
+      for (int dependency : dependencies) {
+        sb.append("var ").append(getTypeName(dependency)).append(" = ");
+        sb.append(getNamespace(dependency)).append(";\n");
+      }
+      sb.append("var ").append(getTypeName(i)).append(" = ").append(ns).append(";\n\n");
+      self = getTypeName(i);
+    }
+
+    Integer base = findBaseClass(dependencies);
+    List<String> jsDoc = new ArrayList<>();
+    jsDoc.add("@param {number} id");
+    jsDoc.add("@constructor");
+    if (base != null) {
+      jsDoc.add("@extends {" + getNamespace(base) + "}");
+    }
+    appendJsDoc(sb, "", "the type number " + i, jsDoc);
+    sb.append(ns).append(" = function(id) {\n");
+    if (base != null) {
+      sb.append("  ").append(getNamespace(base)).append(".call(this, id);\n");
+    }
+    appendJsDoc(sb, "  ", "the identifier of this instance", List.of("@private {number}"));
+    sb.append("  this.id_ = id;\n");
+    appendLineComment(sb, "  ");
+    appendJsDoc(sb, "  ", "the options of this instance", List.of("@type {?" + ns + ".Options}"));
+    sb.append("  this.options = null;\n");
+    sb.append("};\n");
+    sb.append("\n\n");
+
+    appendJsDoc(sb, "", "the kinds of the type", List.of("@enum {number}"));
+    sb.append(ns).append(".Kind = {\n  FIRST: 0,\n  SECOND: 1,\n  THIRD: 2,\n};\n\n\n");
+
+    appendJsDoc(
+        sb,
+        "",
+        "the options of the type",
+        List.of("@typedef {{", "  id: number,", "  kind: !" + ns + ".Kind", "}}"));
+    sb.append(ns).append(".Options;\n\n\n");
+
+    appendJsDoc(sb, "", "the identifier", List.of("@return {number}"));
+    sb.append(self).append(".prototype.getId = function() {\n");
+    sb.append("  return this.id_;\n};\n\n\n");
+
+    for (int dependency : dependencies) {
+      appendJsDoc(
+          sb,
+          "",
+          "a value combined with another instance",
+          List.of(
+              "@param {!" + getNamespace(dependency) + "} other",
+              "@param {" + ns + ".Kind=} kind",
+              "@param {?" + getNamespace(dependency) + ".Options=} options",
+              "@return {number}"));
+      sb.append(self).append(".prototype.combine").append(dependency).append(" = function(");
+      sb.append("other, kind, options) {\n");
+      appendLineComment(sb, "  ");
+      sb.append("  var total = this.id_ + other.getId();\n");
+      sb.append("  return kind == ").append(ns).append(".Kind.SECOND ? total : total + 1;\n");
+      sb.append("};\n\n\n");
+      if (inScope) {
+        // Refer to the alias as well, which goog.scope inlining has to rewrite.
+        appendJsDoc(
+            sb, "", "a new instance", List.of("@return {!" + getNamespace(dependency) + "}"));
+        sb.append(self).append(".prototype.create").append(dependency).append(" = function() {\n");
+        sb.append("  return new ").append(getTypeName(dependency)).append("(this.id_);\n};\n\n\n");
+      }
+    }
+
+    if (inScope) {
+      sb.append("});  // goog.scope\n");
+    }
+  }
+
+  private void generateModuleFile(
+      StringBuilder sb, int i, boolean isRecord, List<Integer> dependencies) {
+    sb.append("goog.module('").append(getNamespace(i)).append("');\n\n");
+    for (int dependency : dependencies) {
+      String name = getTypeName(dependency);
+      if (isModule(styles.get(dependency))) {
+        sb.append("const {").append(name).append("} = goog.require('");
+      } else {
+        sb.append("const ").append(name).append(" = goog.require('");
+      }
+      sb.append(getNamespace(dependency)).append("');\n");
+    }
+    sb.append('\n');
+
+    String name = getTypeName(i);
+    appendJsDoc(sb, "", "the modes of the type", List.of("@enum {string}"));
+    sb.append("const Mode = {\n  PLAIN: 'plain',\n  FANCY: 'fancy',\n};\n\n");
+
+    if (isRecord) {
+      appendJsDoc(sb, "", "the record number " + i, List.of("@record"));
+      sb.append("class ").append(name).append(" {\n");
+      sb.append("  constructor() {\n");
+      appendJsDoc(sb, "    ", "the mode of the record", List.of("@type {!Mode}"));
+      sb.append("    this.mode;\n  }\n\n");
+      appendJsDoc(sb, "  ", "the identifier", List.of("@return {number}"));
+      sb.append("  getId() {}\n");
+      for (int dependency : dependencies) {
+        sb.append('\n');
+        appendJsDoc(
+            sb,
+            "  ",
+            "a value combined with another instance",
+            List.of("@param {!" + getTypeName(dependency) + "} other", "@return {number}"));
+        sb.append("  combine").append(dependency).append("(other) {}\n");
+      }
+      sb.append("}\n\n");
+    } else {
+      Integer base = findBaseClass(dependencies);
+      appendJsDoc(sb, "", "the class number " + i, List.of());
+      sb.append("class ").append(name);
+      if (base != null) {
+        sb.append(" extends ").append(getTypeName(base));
+      }
+      sb.append(" {\n");
+      appendJsDoc(sb, "  ", null, List.of("@param {number} id"));
+      sb.append("  constructor(id) {\n");
+      if (base != null) {
+        sb.append("    super(id);\n");
+      }
+      appendJsDoc(sb, "    ", "the identifier of this instance", List.of("@private {number}"));
+      sb.append("    this.number_ = id;\n");
+      appendJsDoc(sb, "    ", "the mode of this instance", List.of("@type {!Mode}"));
+      sb.append("    this.mode = Mode.PLAIN;\n  }\n\n");
+      appendJsDoc(sb, "  ", "the identifier", List.of("@return {number}"));
+      sb.append("  getId() {\n    return this.number_;\n  }\n");
+      for (int dependency : dependencies) {
+        sb.append('\n');
+        appendJsDoc(
+            sb,
+            "  ",
+            "a value combined with another instance",
+            List.of("@param {!" + getTypeName(dependency) + "} other", "@return {number}"));
+        sb.append("  combine").append(dependency).append("(other) {\n");
+        appendLineComment(sb, "    ");
+        sb.append("    return this.number_ + other.getId();\n  }\n");
+      }
+      sb.append("}\n\n");
+    }
+    sb.append("exports = {").append(name).append(", Mode};\n");
+  }
+
+  /** Returns the first dependency declaring a class, or null if there is none. */
+  @Nullable
+  private Integer findBaseClass(List<Integer> dependencies) {
+    return !dependencies.isEmpty() && styles.get(dependencies.get(0)) != Style.MODULE_RECORD
+        ? dependencies.get(0)
+        : null;
+  }
+
+  /**
+   * Appends a JSDoc block with the annotations, preceded by a description of the subject depending
+   * on the comment density.
+   */
+  private void appendJsDoc(
+      StringBuilder sb, String indent, @Nullable String subject, List<String> tags) {
+    List<String> lines = new ArrayList<>();
+    if (subject != null && random.nextDouble() < commentDensity) {
+      lines.add("Returns or holds " + subject + ", " + randomPhrase() + ".");
+      for (int sentences = random.nextInt(3); sentences > 0; sentences--) {
+        lines.add("The " + randomPhrase() + " is kept in sync with the " + randomPhrase() + ".");
+      }
+      if (!tags.isEmpty()) {
+        lines.add("");
+      }
+    }
+    lines.addAll(tags);
+    if (lines.isEmpty()) {
+      return;
+    }
+    if (lines.size() == 1) {
+      sb.append(indent).append("/** ").append(lines.get(0)).append(" */\n");
+      return;
+    }
+    sb.append(indent).append("/**\n");
+    for (String line : lines) {
+      sb.append(indent).append(line.isEmpty() ? " *" : " * " + line).append('\n');
+    }
+    sb.append(indent).append(" */\n");
+  }
+
+  /** Appends a line comment depending on the comment density. */
+  private void appendLineComment(StringBuilder sb, String indent) {
+    if (random.nextDouble() < commentDensity) {
+      sb.append(indent).append("// Update the ").append(randomPhrase()).append(" first.\n");
+    }
+  }
+
+  private String randomPhrase() {
+    return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+  }
+}
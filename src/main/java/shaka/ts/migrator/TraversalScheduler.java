@@ -0,0 +1,49 @@
+package shaka.ts.migrator;
+
+import com.google.javascript.jscomp.AbstractCompiler;
+import com.google.javascript.jscomp.NodeTraversal;
+import com.google.javascript.jscomp.NodeTraversal.AbstractPostOrderCallback;
+import com.google.javascript.rhino.Node;
+import java.util.List;
+
+/**
+ * Runs post-order callbacks in phases. All callbacks of a phase share a single walk of the tree,
+ * see {@link FusedCallback}, while a phase only starts once the previous one walked the whole
+ * tree.
+ *
+ * <p>Callbacks may only share a phase if none of them depends on changes the others make
+ * elsewhere in the tree.
+ */
+final class TraversalScheduler {
+  private final AbstractCompiler compiler;
+  private int walks = 0;
+  private int callbacks = 0;
+
+  TraversalScheduler(AbstractCompiler compiler) {
+    this.compiler = compiler;
+  }
+
+  /** Walks the tree under root once for each phase. */
+  @SafeVarargs
+  final void traverse(Node root, List<? extends AbstractPostOrderCallback>... phases) {
+    for (List<? extends AbstractPostOrderCallback> phase : phases) {
+      if (phase.isEmpty()) {
+        continue;
+      }
+      NodeTraversal.traverse(
+          compiler, root, phase.size() == 1 ? phase.get(0) : new FusedCallback(phase));
+      walks++;
+      callbacks += phase.size();
+    }
+  }
+
+  /** Returns the number of walks done so far. */
+  int getWalks() {
+    return walks;
+  }
+
+  /** Returns the number of walks saved so far by sharing them between callbacks. */
+  int getWalksSaved() {
+    return callbacks - walks;
+  }
+}
@@ -30,21 +30,32 @@ public final class TypeAnnotationPass implements CompilerPass {
   private final NameUtil nameUtil;
   private final NodeComments nodeComments;
 
-  /** symbolName -> fileModule */
-  private final Map<String, CollectModuleMetadata.FileModule> symbolToModule;
+  private final CollectModuleMetadata modulePrepass;
+  private final SymbolTable<String> initialTypeRewrite;
+
+  /** The frozen module metadata, with its symbolName -> fileModule index */
+  private CollectModuleMetadata.Snapshot metadata;
   /** filename, namespace -> local name */
-  private final Table<String, String, String> typeRewrite;
+  private SymbolTable<String> typeRewrite;
+  /** filename -> index of the namespaces initially in its {@code typeRewrite} row */
+  private Map<String, NamespaceTrie<String>> rewriteIndex;
   /** filename -> extra imports needed to be added */
   private final Multimap<String, Node> importsNeeded = LinkedHashMultimap.create();
   /** extern -> typing map for when extern and TS typing names differ */
   private final Map<String, String> externsMap;
+  /** filename -> type names looked up in the symbol table, only kept when requested */
+  @Nullable private SetMultimap<String, String> typeReferences = null;
 
+  /**
+   * The symbol table is read from {@code modulePrepass} and {@code typeRewrite} once the pass runs,
+   * so both may still be filled in by earlier passes after construction.
+   */
   TypeAnnotationPass(
       AbstractCompiler compiler,
       PathUtil pathUtil,
       NameUtil nameUtil,
-      Map<String, CollectModuleMetadata.FileModule> symbolMap,
-      Table<String, String, String> typeRewrite,
+      CollectModuleMetadata modulePrepass,
+      SymbolTable<String> typeRewrite,
       NodeComments nodeComments,
       Map<String, String> externsMap) {
     this.compiler = compiler;
@@ -52,15 +63,81 @@ public final class TypeAnnotationPass implements CompilerPass {
     this.nameUtil = nameUtil;
     this.nodeComments = nodeComments;
 
-    this.symbolToModule = new HashMap<>(symbolMap);
-    this.typeRewrite = HashBasedTable.create(typeRewrite);
+    this.modulePrepass = modulePrepass;
+    this.initialTypeRewrite = typeRewrite;
     this.externsMap = externsMap;
   }
 
+  /**
+   * Freezes the module metadata, whose writers have all run by now, and indexes the rewrites for
+   * {@link #convertTypeName}.
+   */
+  void indexSymbols() {
+    metadata = modulePrepass.freeze();
+    typeRewrite = initialTypeRewrite.copy();
+
+    // Namespaces added to a row later on always come from the symbol index, so the index of the
+    // initial row together with symbolIndex covers every namespace the row can contain.
+    rewriteIndex = new HashMap<>();
+    typeRewrite.forEach(
+        (file, namespace, localName) ->
+            rewriteIndex
+                .computeIfAbsent(file, k -> new NamespaceTrie<>())
+                .put(namespace, localName));
+  }
+
+  /**
+   * Makes the pass remember which type names each file resolves against the symbol table, so that
+   * incremental runs can tell which files are affected by a change in another file's exports.
+   */
+  void recordTypeReferences() {
+    typeReferences = LinkedHashMultimap.create();
+  }
+
+  /** Returns the type names recorded by {@link #recordTypeReferences()}, keyed by file name. */
+  SetMultimap<String, String> getTypeReferences() {
+    return typeReferences == null ? ImmutableSetMultimap.of() : typeReferences;
+  }
+
   @Override
   public void process(Node externs, Node root) {
+    indexSymbols();
     NodeTraversal.traverse(compiler, root, new TypeAnnotationConverter());
     NodeTraversal.traverse(compiler, root, new AccessModifierConverter());
+    addAllTypeOnlyImports(root);
+  }
+
+  /** Returns the steps of {@link #process}, for {@link PassManager}. */
+  List<PassManager.Step> getSteps() {
+    return ImmutableList.of(
+        PassManager.action(
+            "TypeAnnotationPass.indexSymbols",
+            (externs, root) -> indexSymbols(),
+            () -> 0,
+            EnumSet.of(PassManager.Metadata.MODULE_METADATA, PassManager.Metadata.MODULE_REWRITES),
+            EnumSet.of(PassManager.Metadata.TYPE_REWRITES)),
+        PassManager.traversal(
+            "TypeAnnotationConverter",
+            new TypeAnnotationConverter(),
+            EnumSet.of(PassManager.Metadata.TYPE_REWRITES, PassManager.Metadata.COMMENTS),
+            EnumSet.of(
+                PassManager.Metadata.TYPE_REWRITES,
+                PassManager.Metadata.COMMENTS,
+                PassManager.Metadata.TYPE_ANNOTATIONS)),
+        PassManager.traversal(
+            "AccessModifierConverter",
+            new AccessModifierConverter(),
+            EnumSet.noneOf(PassManager.Metadata.class),
+            EnumSet.of(PassManager.Metadata.ACCESS_MODIFIERS)),
+        PassManager.action(
+            "TypeAnnotationPass.addTypeOnlyImports",
+            (externs, root) -> addAllTypeOnlyImports(root),
+            () -> 0,
+            EnumSet.of(PassManager.Metadata.TYPE_REWRITES),
+            EnumSet.noneOf(PassManager.Metadata.class)));
+  }
+
+  private void addAllTypeOnlyImports(Node root) {
     for (Node script : root.children()) {
       addTypeOnlyImports(script);
     }
@@ -333,7 +410,7 @@ public final class TypeAnnotationPass implements CompilerPass {
    * @return the root node of a TypeDeclaration AST, or null if no type is available for the node.
    */
   @Nullable
-  private TypeDeclarationNode convertTypeNodeAST(Node n) {
+  TypeDeclarationNode convertTypeNodeAST(Node n) {
     return convertTypeNodeAST(n, false);
   }
 
@@ -509,34 +586,33 @@ public final class TypeAnnotationPass implements CompilerPass {
 
   /** Converts the global type name to the local type name. */
   private String convertTypeName(String sourceFile, String typeName) {
-    Map<String, String> rewriteMap =
-        typeRewrite.containsRow(sourceFile)
-            ? typeRewrite.rowMap().get(sourceFile)
-            : new HashMap<>();
-
-    // All type symbols declared anywhere in the compilation unit
-    Set<String> allTypes = new HashSet<>();
-    allTypes.addAll(rewriteMap.keySet());
-    allTypes.addAll(symbolToModule.keySet());
-
-    String importedNamespace = nameUtil.findLongestNamePrefix(typeName, allTypes);
+    if (typeReferences != null) {
+      typeReferences.put(sourceFile, typeName);
+    }
+    // Longest prefix among all type symbols declared anywhere in the compilation unit
+    int prefixLength = metadata.symbolIndex.longestPrefixLength(typeName);
+    NamespaceTrie<String> fileIndex = rewriteIndex.get(sourceFile);
+    if (fileIndex != null) {
+      prefixLength = Math.max(prefixLength, fileIndex.longestPrefixLength(typeName));
+    }
     // Closure compilation can be permissive to the point where there are missing types.
     // Gents supports these usecases by syntactically emitting the type as written. The file emitted
     // file might not work with TS compiler, but at least the type is not lost.
-    if (importedNamespace == null) {
+    if (prefixLength < 0) {
       return typeName;
     }
+    String importedNamespace = typeName.substring(0, prefixLength);
 
-    if (rewriteMap.containsKey(importedNamespace)) {
+    String rewrite = typeRewrite.get(sourceFile, importedNamespace);
+    if (rewrite != null) {
       // Rewrite already imported types
-      String symbol = rewriteMap.get(importedNamespace);
-      return nameUtil.replacePrefixInName(typeName, importedNamespace, symbol);
+      return nameUtil.replacePrefixInName(typeName, importedNamespace, rewrite);
     } else {
       // Rewrite ALL types in compilation unit
-      CollectModuleMetadata.FileModule module = symbolToModule.get(importedNamespace);
-      String symbol = module.importedNamespacesToSymbols.get(importedNamespace);
+      CollectModuleMetadata.FileModule module = metadata.symbols.get(importedNamespace);
+      String symbol = module.getImportedNamespacesToSymbols().get(importedNamespace);
 
-      CollectModuleMetadata.FileModule typeModule = symbolToModule.get(typeName);
+      CollectModuleMetadata.FileModule typeModule = metadata.symbols.get(typeName);
 
 //      // Create a new import statement if the symbol to import isn't from the same file or the type
 //      // is not part of the compilation unit.
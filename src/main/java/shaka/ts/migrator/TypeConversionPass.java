@@ -2,6 +2,7 @@ package shaka.ts.migrator;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
 import com.google.javascript.jscomp.AbstractCompiler;
 import com.google.javascript.jscomp.CompilerPass;
@@ -40,6 +41,8 @@ public final class TypeConversionPass implements CompilerPass {
 
   private Map<String, String> typesToFilename;
 
+  private final TraversalScheduler scheduler;
+
   TypeConversionPass(
       AbstractCompiler compiler, CollectModuleMetadata modulePrepass, NodeComments nodeComments) {
     this.compiler = compiler;
@@ -48,6 +51,12 @@ public final class TypeConversionPass implements CompilerPass {
     this.types = new LinkedHashMap<>();
     this.typesToRename = new LinkedHashMap<>();
     this.typesToFilename = new LinkedHashMap<>();
+    this.scheduler = new TraversalScheduler(compiler);
+  }
+
+  /** Returns the scheduler running the converters, to report how many walks it saved. */
+  TraversalScheduler getScheduler() {
+    return scheduler;
   }
 
   @Override
@@ -58,11 +67,15 @@ public final class TypeConversionPass implements CompilerPass {
       // We convert each file independently to avoid merging class methods from different files.
       if (child.isScript()) {
         this.types = new LinkedHashMap<>();
-        NodeTraversal.traverse(compiler, child, new TypeConverter());
-        NodeTraversal.traverse(compiler, child, new TypeMemberConverter());
-        NodeTraversal.traverse(compiler, child, new FieldOnThisConverter());
-        NodeTraversal.traverse(compiler, child, new InheritanceConverter());
-        NodeTraversal.traverse(compiler, child, new EnumConverter());
+        // Members are moved into the classes created by TypeConverter, and fields on "this" and
+        // super calls are only found once the methods containing them are inside their class.
+        // The last three converters do not depend on each other and share a walk.
+        scheduler.traverse(
+            child,
+            ImmutableList.of(new TypeConverter()),
+            ImmutableList.of(new TypeMemberConverter()),
+            ImmutableList.of(
+                new FieldOnThisConverter(), new InheritanceConverter(), new EnumConverter()));
       }
     }
     convertTypeAlias();
@@ -496,19 +509,15 @@ public final class TypeConversionPass implements CompilerPass {
    * rename 'typeToRename'
    */
   private void convertTypeAlias() {
-    Map<String, CollectModuleMetadata.FileModule> fileMap = modulePrepass.getFileMap();
     for (Entry<String, String> entry : typesToRename.entrySet()) {
       // Need to add a module entry in the file to module map otherwise TypeAnnotationPass won't
       // convert any symbols in the file.
       String oldTypeName = entry.getKey();
       String newTypeName = entry.getValue();
       String filename = typesToFilename.get(oldTypeName);
-      CollectModuleMetadata.FileModule module = fileMap.get(filename);
-      if (module != null) {
-        // TypeAnnotationPass will convert the global type name to the local type name using this
-        // mapping.
-        module.importedNamespacesToSymbols.put(oldTypeName, newTypeName);
-      }
+      // TypeAnnotationPass will convert the global type name to the local type name using this
+      // mapping.
+      modulePrepass.addTypeAlias(filename, oldTypeName, newTypeName);
     }
   }
 
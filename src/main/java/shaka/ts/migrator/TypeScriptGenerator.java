@@ -1,31 +1,69 @@
 package shaka.ts.migrator;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.javascript.jscomp.*;
 import com.google.javascript.jscomp.CodePrinter.Builder.CodeGeneratorFactory;
 import com.google.javascript.jscomp.Compiler;
 import com.google.javascript.jscomp.CodePrinter.Format;
 import com.google.javascript.rhino.Node;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /**
  * A tool that transpiles {@code .js} ES6 and ES5 Closure annotated JavaScript to {@code .ts}
  * TypeScript.
  */
 public class TypeScriptGenerator {
-  private static final DiagnosticType GENTS_INTERNAL_ERROR =  DiagnosticType.error("INTERNAL_ERROR", "TS migrator failed: {0}");
+  private static final DiagnosticType GENTS_INTERNAL_ERROR =
+      DiagnosticType.error("INTERNAL_ERROR", "TS migrator failed: {0}");
+
+  /** See {@link #getToolVersion()}, computed once. */
+  @Nullable private static String toolVersion = null;
 
   private final Options opts;
   private final Compiler compiler;
   final PathUtil pathUtil;
   private final NameUtil nameUtil;
   private GentsErrorManager errorManager;
+  /** Metadata of files that are not compiled in this run, see {@link IncrementalConverter}. */
+  @Nullable private List<IncrementalCache.ModuleRecord> precomputedModules = null;
+  /** Set when profiling, see {@link Options#profileReport}. */
+  @Nullable private ConversionProfile profile = null;
+  /** Whether to fill in {@link GentsResult#moduleRewriteLog}. */
+  private boolean generateModuleRewriteLog;
+  /** Set when converting one of several shards, see {@link ShardedConverter}. */
+  @Nullable private ModuleExchange moduleExchange = null;
 
   TypeScriptGenerator(Options opts) {
     this.opts = opts;
@@ -35,6 +73,20 @@ public class TypeScriptGenerator {
 
     this.pathUtil = new PathUtil(opts.root, opts.absolutePathPrefix);
     this.nameUtil = new NameUtil(compiler);
+    this.generateModuleRewriteLog = opts.moduleRewriteLog != null;
+    if (opts.profileReport != null) {
+      profile = new ConversionProfile();
+    }
+  }
+
+  /** Records the phases of the conversion in a profile shared with other runs. */
+  void setProfile(ConversionProfile profile) {
+    this.profile = profile;
+  }
+
+  /** Overrides whether the module rewrite log is generated, which the options decide by default. */
+  void setGenerateModuleRewriteLog(boolean generateModuleRewriteLog) {
+    this.generateModuleRewriteLog = generateModuleRewriteLog;
   }
 
   void setErrorStream(PrintStream errStream) {
@@ -44,30 +96,174 @@ public class TypeScriptGenerator {
     compiler.setErrorManager(errorManager);
   }
 
+  /** Returns the number of errors reported so far. */
+  int getErrorCount() {
+    return errorManager.getErrorCount();
+  }
+
+  /**
+   * Registers the module metadata of files that are converted but not passed to {@link
+   * #generateTypeScript} because their output from a previous run is reused. This also records the
+   * per-file module metadata and type references in the result.
+   */
+  void setPrecomputedModules(List<IncrementalCache.ModuleRecord> modules) {
+    this.precomputedModules = modules;
+  }
+
+  /**
+   * Trades the module metadata of the files passed to {@link #generateTypeScript} for that of the
+   * files converted by other compilations, once their modules are collected and again once their
+   * type aliases are added.
+   */
+  void setModuleExchange(ModuleExchange moduleExchange) {
+    this.moduleExchange = moduleExchange;
+  }
+
+  /**
+   * Returns the version of the migrator, used to invalidate caches written by other versions. It
+   * includes a hash of the build, so that a development build whose code changed does not reuse the
+   * caches of the previous one.
+   */
+  static synchronized String getToolVersion() {
+    if (toolVersion == null) {
+      String version = TypeScriptGenerator.class.getPackage().getImplementationVersion();
+      toolVersion = (version == null ? "dev" : version) + "+" + hashBuild();
+    }
+    return toolVersion;
+  }
+
+  /**
+   * Hashes the classes of the migrator, as a directory or a jar, and the file names of the
+   * classpath, which name the versions of the dependencies.
+   */
+  private static String hashBuild() {
+    Hasher hasher = Hashing.sha256().newHasher();
+    String classPath = System.getProperty("java.class.path", "");
+    for (String entry : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(classPath)) {
+      hasher.putString(new File(entry).getName(), UTF_8).putByte((byte) 0);
+    }
+    try {
+      CodeSource source = TypeScriptGenerator.class.getProtectionDomain().getCodeSource();
+      Path location = Paths.get(source.getLocation().toURI());
+      if (Files.isDirectory(location)) {
+        List<Path> classFiles;
+        try (Stream<Path> files = Files.walk(location)) {
+          classFiles = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path classFile : classFiles) {
+          hasher.putString(location.relativize(classFile).toString(), UTF_8).putByte((byte) 0);
+          hasher.putBytes(Files.readAllBytes(classFile));
+        }
+      } else {
+        hasher.putBytes(Files.readAllBytes(location));
+      }
+    } catch (IOException | URISyntaxException | RuntimeException e) {
+      // The build is unknown, so no cache written by another process can be trusted.
+      hasher.putString(UUID.randomUUID().toString(), UTF_8);
+    }
+    return hasher.hash().toString().substring(0, 16);
+  }
+
   /** Returns a map from the basename to the TypeScript code generated for the file. */
   public GentsResult generateTypeScript(
       Set<String> filesToConvert, List<SourceFile> srcFiles, List<SourceFile> externs,
       boolean declareOnly)
       throws AssertionError {
+    Map<String, String> sourceFileMap = new LinkedHashMap<>();
+    GentsResult result =
+        generateTypeScript(
+            filesToConvert,
+            srcFiles,
+            externs,
+            declareOnly,
+            (path, code) -> sourceFileMap.put(path, code.toString()));
+    result.sourceFileMap = sourceFileMap;
+    return result;
+  }
+
+  /**
+   * Same as {@link #generateTypeScript(Set, List, List, boolean)}, but passes the code of every
+   * file to {@code sink} as soon as it is printed instead of collecting it in {@link
+   * GentsResult#sourceFileMap}, which is left empty.
+   */
+  GentsResult generateTypeScript(
+      Set<String> filesToConvert,
+      List<SourceFile> srcFiles,
+      List<SourceFile> externs,
+      boolean declareOnly,
+      OutputSink sink) {
     GentsResult result = new GentsResult();
 
+    result.profile = profile;
+
     final CompilerOptions compilerOpts = opts.getCompilerOptions();
+    ConversionProfile.Span compileSpan = profile == null ? null : profile.start("compile");
     compiler.compile(externs, srcFiles, compilerOpts);
 
     Node externRoot = compiler.getRoot().getFirstChild();
     Node srcRoot = compiler.getRoot().getLastChild();
+    if (compileSpan != null) {
+      compileSpan.finishCounting(compiler.getRoot());
+    }
 
-    new RemoveGoogScopePass(compiler).process(externRoot, srcRoot);
-    CollectModuleMetadata modulePrePass = new CollectModuleMetadata(compiler, nameUtil, filesToConvert);
-    modulePrePass.process(externRoot, srcRoot);
-    stripNonCompiledNodes(srcRoot, filesToConvert);
-    CommentLinkingPass commentsPass = new CommentLinkingPass(compiler);
-    commentsPass.process(externRoot, srcRoot);
+    CollectModuleMetadata modulePrePass =
+        new CollectModuleMetadata(compiler, nameUtil, filesToConvert);
+    if (precomputedModules != null) {
+      for (IncrementalCache.ModuleRecord module : precomputedModules) {
+        modulePrePass.restoreFileModule(module);
+      }
+    }
+    CommentLinkingPass commentsPass = new CommentLinkingPass(compiler, opts.threads);
     final NodeComments comments = commentsPass.getComments();
-    Table<String, String, String> typeRewriteTable = HashBasedTable.create();
 
+    PassManager passManager = new PassManager(compiler);
+    if (profile != null) {
+      passManager.setProfile(profile);
+    }
+    passManager.add(
+        PassManager.traversal(
+            "RemoveGoogScopePass",
+            new RemoveGoogScopePass(compiler),
+            EnumSet.noneOf(PassManager.Metadata.class),
+            EnumSet.noneOf(PassManager.Metadata.class)));
+    passManager.add(
+        PassManager.traversal(
+            "CollectModuleMetadata",
+            modulePrePass,
+            EnumSet.of(PassManager.Metadata.MODULE_METADATA),
+            EnumSet.of(PassManager.Metadata.MODULE_METADATA)));
+    if (moduleExchange != null) {
+      passManager.add(exchangeModules("exchangeModules", modulePrePass, srcRoot));
+    }
+    passManager.add(
+        PassManager.action(
+            "stripNonCompiledNodes",
+            (externRoots, root) -> stripNonCompiledNodes(root, filesToConvert),
+            () -> 0,
+            EnumSet.noneOf(PassManager.Metadata.class),
+            EnumSet.noneOf(PassManager.Metadata.class)));
+    passManager.add(
+        PassManager.action(
+            "CommentLinkingPass",
+            commentsPass,
+            // One traversal per script.
+            srcRoot::getChildCount,
+            EnumSet.noneOf(PassManager.Metadata.class),
+            EnumSet.of(PassManager.Metadata.COMMENTS)));
+
+    // Shared by the rewrite tables of this conversion, so each name is stored and hashed once.
+    SymbolInterner symbols = new SymbolInterner();
+    SymbolTable<String> typeRewriteTable = new SymbolTable<>(symbols);
+    ExternConversionPass externPass = null;
     if (declareOnly) {
-      new ExternConversionPass(compiler, nameUtil).process(externRoot, srcRoot);
+      externPass = new ExternConversionPass(compiler, nameUtil);
+      passManager.add(
+          PassManager.action(
+              "ExternConversionPass",
+              externPass,
+              () -> 1,
+              EnumSet.noneOf(PassManager.Metadata.class),
+              EnumSet.noneOf(PassManager.Metadata.class)));
     } else {
       NamespaceConversionPass modulePass =
               new NamespaceConversionPass(
@@ -77,87 +273,244 @@ public class TypeScriptGenerator {
                       modulePrePass.getFileMap(),
                       modulePrePass.getNamespaceMap(),
                       comments,
+                      symbols,
                       opts.alreadyConvertedPrefix);
-      modulePass.process(externRoot, srcRoot);
+      passManager.addAll(modulePass.getSteps());
       typeRewriteTable = modulePass.getTypeRewrite();
     }
-    new TypeConversionPass(compiler, modulePrePass, comments).process(externRoot, srcRoot);
-    new TypeAnnotationPass(
+    TypeConversionPass typePass = new TypeConversionPass(compiler, modulePrePass, comments);
+    passManager.add(
+        PassManager.action(
+            "TypeConversionPass",
+            typePass,
+            () -> typePass.getScheduler().getWalks(),
+            EnumSet.of(PassManager.Metadata.MODULE_METADATA, PassManager.Metadata.COMMENTS),
+            EnumSet.of(
+                PassManager.Metadata.MODULE_METADATA,
+                PassManager.Metadata.COMMENTS,
+                PassManager.Metadata.ACCESS_MODIFIERS)));
+    if (moduleExchange != null) {
+      // TypeConversionPass registers the last of the metadata, its type aliases.
+      passManager.add(exchangeModules("exchangeTypeAliases", modulePrePass, srcRoot));
+    }
+    TypeAnnotationPass annotationPass =
+        new TypeAnnotationPass(
             compiler,
             pathUtil,
             nameUtil,
-            modulePrePass.getSymbolMap(),
+            modulePrePass,
             typeRewriteTable,
             comments,
-            opts.externsMap)
-            .process(externRoot, srcRoot);
-    new StyleFixPass(compiler, comments).process(externRoot, srcRoot);
+            opts.externsMap);
+    if (precomputedModules != null) {
+      annotationPass.recordTypeReferences();
+    }
+    passManager.addAll(annotationPass.getSteps());
+    passManager.add(
+        PassManager.traversal(
+            "StyleFixPass",
+            new StyleFixPass(compiler, comments),
+            EnumSet.of(PassManager.Metadata.COMMENTS, PassManager.Metadata.TYPE_ANNOTATIONS),
+            EnumSet.of(PassManager.Metadata.COMMENTS, PassManager.Metadata.TYPE_ANNOTATIONS)));
+
+    passManager.process(externRoot, srcRoot);
+    if (opts.debug) {
+      System.err.print(passManager.getReport());
+      TraversalScheduler scheduler = typePass.getScheduler();
+      System.err.println(
+          String.format(
+              "TypeConversionPass: %d tree walks, %d saved by sharing walks between converters",
+              scheduler.getWalks(), scheduler.getWalksSaved()));
+    }
 
     // We only use the source root as the extern root is ignored for codegen
-    for (Node file : srcRoot.children()) {
-      try {
-        String filepath = pathUtil.getFilePathWithoutExtension(file.getSourceFileName());
-        CodeGeneratorFactory factory =
-            new CodeGeneratorFactory() {
-              @Override
-              public CodeGenerator getCodeGenerator(Format outputFormat, CodeConsumer cc) {
-                return new GentsCodeGenerator(cc, compilerOpts, comments, opts.externsMap);
-              }
-            };
-
-        String tsCode =
-            new CodePrinter.Builder(file)
-                .setCompilerOptions(opts.getCompilerOptions())
-                .setTypeRegistry(compiler.getTypeRegistry())
-                .setCodeGeneratorFactory(factory)
-                .setPrettyPrint(true)
-                .setLineBreak(true)
-                .setOutputTypes(true)
-                .build();
-
-        // For whatever reason closure sometimes prefixes the emit with an empty new line. Strip
-        // newlines not present in the original source.
-        CharSequence originalSourceCode =
-            compiler.getSourceFileContentByName(file.getSourceFileName());
-
-        Integer originalCount = countBeginningNewlines(originalSourceCode);
-        Integer newCount = countBeginningNewlines(tsCode);
-
-        if (newCount > originalCount) {
-          tsCode = tsCode.substring(newCount - originalCount);
-        }
+    emitFiles(ImmutableList.copyOf(srcRoot.children()), compilerOpts, comments, sink);
 
-        result.sourceFileMap.put(filepath, tsCode);
-      } catch (Throwable t) {
-        System.err.println("Failed while converting " + file.getSourceFileName());
-        t.printStackTrace(System.err);
-        compiler.report(
-            JSError.make(file.getSourceFileName(), -1, -1, GENTS_INTERNAL_ERROR, t.getMessage()));
+    if (generateModuleRewriteLog) {
+      result.moduleRewriteLog =
+          new ModuleRenameLogger()
+              .generateModuleRewriteLog(filesToConvert, modulePrePass.getNamespaceMap());
+    }
+    if (precomputedModules != null) {
+      for (Node file : srcRoot.children()) {
+        String fileName = file.getSourceFileName();
+        CollectModuleMetadata.FileModule module = modulePrePass.getFileMap().get(fileName);
+        if (module != null) {
+          result.moduleRecords.put(fileName, module.toRecord());
+        }
+        result.requiredNamespaces.putAll(fileName, modulePrePass.getRequiredNamespaces(fileName));
       }
+      result.typeReferences = annotationPass.getTypeReferences();
     }
-
-    result.moduleRewriteLog =
-        new ModuleRenameLogger()
-            .generateModuleRewriteLog(filesToConvert, modulePrePass.getNamespaceMap());
     errorManager.doGenerateReport();
     return result;
   }
 
-  private Integer countBeginningNewlines(CharSequence originalSourceCode) {
-    Integer originalCount = 0;
-    for (Integer i = 0; i < originalSourceCode.length(); i++) {
+  /**
+   * Returns a step that hands the module metadata of the compiled files to {@link
+   * #moduleExchange} and restores the metadata it returns for the files of other compilations.
+   */
+  private PassManager.Step exchangeModules(
+      String name, CollectModuleMetadata modulePrePass, Node srcRoot) {
+    return PassManager.action(
+        name,
+        (externRoots, root) -> {
+          List<IncrementalCache.ModuleRecord> modules = new ArrayList<>();
+          for (Node file : srcRoot.children()) {
+            CollectModuleMetadata.FileModule module =
+                modulePrePass.getFileMap().get(file.getSourceFileName());
+            if (module != null) {
+              modules.add(module.toRecord());
+            }
+          }
+          for (IncrementalCache.ModuleRecord module : moduleExchange.exchange(modules)) {
+            modulePrePass.restoreFileModule(module);
+          }
+        },
+        () -> 0,
+        EnumSet.of(PassManager.Metadata.MODULE_METADATA),
+        EnumSet.of(PassManager.Metadata.MODULE_METADATA));
+  }
+
+  /** Returns the module rewrite log of a conversion, given the module metadata of all files. */
+  String generateModuleRewriteLog(
+      Set<String> filesToConvert, List<IncrementalCache.ModuleRecord> modules) {
+    CollectModuleMetadata modulePrePass =
+        new CollectModuleMetadata(compiler, nameUtil, filesToConvert);
+    for (IncrementalCache.ModuleRecord module : modules) {
+      modulePrePass.restoreFileModule(module);
+    }
+    return new ModuleRenameLogger()
+        .generateModuleRewriteLog(filesToConvert, modulePrePass.getNamespaceMap());
+  }
+
+  /** Converts every file of a generated corpus, see {@link SyntheticCorpus}. */
+  GentsResult generateTypeScript(SyntheticCorpus corpus) {
+    return generateTypeScript(
+        corpus.getFileNames(), corpus.getSourceFiles(), Collections.emptyList(), false);
+  }
+
+  /**
+   * Prints every script into {@code sink}. With more than one worker thread the scripts are
+   * printed concurrently, but results and failures are still recorded in source order.
+   */
+  private void emitFiles(
+      List<Node> files,
+      final CompilerOptions compilerOpts,
+      final NodeComments comments,
+      OutputSink sink) {
+    if (opts.threads <= 1) {
+      for (Node file : files) {
+        CharSequence code;
+        try {
+          code = emitFile(file, compilerOpts, comments);
+        } catch (Throwable t) {
+          reportEmitFailure(file, t);
+          continue;
+        }
+        sink.accept(getOutputPath(file), code);
+      }
+      return;
+    }
+
+    // The type registry is created lazily, make sure the workers don't race to create it.
+    compiler.getTypeRegistry();
+    ExecutorService pool = Executors.newFixedThreadPool(opts.threads);
+    try {
+      List<Future<CharSequence>> emitted = new ArrayList<>();
+      for (Node file : files) {
+        emitted.add(pool.submit(() -> emitFile(file, compilerOpts, comments)));
+      }
+      for (int i = 0; i < files.size(); i++) {
+        Node file = files.get(i);
+        CharSequence code;
+        try {
+          code = emitted.get(i).get();
+        } catch (ExecutionException e) {
+          reportEmitFailure(file, e.getCause());
+          continue;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          reportEmitFailure(file, e);
+          continue;
+        }
+        // Let the printed code be collected once the sink is done with it.
+        emitted.set(i, null);
+        sink.accept(getOutputPath(file), code);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private String getOutputPath(Node file) {
+    return pathUtil.getFilePathWithoutExtension(file.getSourceFileName());
+  }
+
+  /**
+   * Returns the TypeScript code generated for a single script. Leading newlines that are not in the
+   * original source are skipped through a view of the printed code rather than a copy.
+   */
+  private CharSequence emitFile(Node file, CompilerOptions compilerOpts, NodeComments comments) {
+    ConversionProfile.Span span =
+        profile == null ? null : profile.start("emit", file.getSourceFileName());
+    final Set<Node> newlinesBefore = GentsCodeGenerator.findNewlinesBefore(file, comments);
+    CodeGeneratorFactory factory =
+        new CodeGeneratorFactory() {
+          @Override
+          public CodeGenerator getCodeGenerator(Format outputFormat, CodeConsumer cc) {
+            return new GentsCodeGenerator(
+                cc, compilerOpts, comments, newlinesBefore, opts.externsMap);
+          }
+        };
+
+    String tsCode =
+        new CodePrinter.Builder(file)
+            .setCompilerOptions(opts.getCompilerOptions())
+            .setTypeRegistry(compiler.getTypeRegistry())
+            .setCodeGeneratorFactory(factory)
+            .setPrettyPrint(true)
+            .setLineBreak(true)
+            .setOutputTypes(true)
+            .build();
+
+    // For whatever reason closure sometimes prefixes the emit with an empty new line. Strip
+    // newlines not present in the original source.
+    CharSequence code = tsCode;
+    int newCount = countBeginningNewlines(tsCode);
+    if (newCount > 0) {
+      int originalCount =
+          countBeginningNewlines(compiler.getSourceFileContentByName(file.getSourceFileName()));
+      if (newCount > originalCount) {
+        code = CharBuffer.wrap(tsCode, newCount - originalCount, tsCode.length());
+      }
+    }
+    if (span != null) {
+      span.finishCounting(file);
+    }
+    return code;
+  }
+
+  private void reportEmitFailure(Node file, Throwable t) {
+    System.err.println("Failed while converting " + file.getSourceFileName());
+    t.printStackTrace(System.err);
+    compiler.report(
+        JSError.make(file.getSourceFileName(), -1, -1, GENTS_INTERNAL_ERROR, t.getMessage()));
+  }
+
+  private static int countBeginningNewlines(CharSequence code) {
+    int count = 0;
+    for (int i = 0; i < code.length(); i++) {
       // There's a terrible hack in GentsCodeGenerator that it sometimes adds " \n" instead of "\n".
       // Count and strip that too.
-      if (originalSourceCode.charAt(i) == '\n'
-          || (originalSourceCode.charAt(i) == ' '
-              && i + 1 < originalSourceCode.length()
-              && originalSourceCode.charAt(i + 1) == '\n')) {
-        originalCount += 1;
+      if (code.charAt(i) == '\n'
+          || (code.charAt(i) == ' ' && i + 1 < code.length() && code.charAt(i + 1) == '\n')) {
+        count += 1;
       } else {
         break;
       }
     }
-    return originalCount;
+    return count;
   }
 
   /** Removes the root nodes for all the library files from the source node. */
@@ -171,7 +524,20 @@ public class TypeScriptGenerator {
 
   static class GentsResult {
 
+    /** Empty when the code is passed to an {@link OutputSink} instead. */
     public Map<String, String> sourceFileMap = new LinkedHashMap<>();
+    /** Empty unless a log was requested, see {@link Options#moduleRewriteLog}. */
     public String moduleRewriteLog = "";
+    /** Module metadata of every compiled file, only filled in incremental runs. */
+    Map<String, IncrementalCache.ModuleRecord> moduleRecords = new LinkedHashMap<>();
+    /** Type names each compiled file resolved, only filled in incremental runs. */
+    SetMultimap<String, String> typeReferences = ImmutableSetMultimap.of();
+    /** Namespaces each compiled file goog.requires, only filled in incremental runs. */
+    SetMultimap<String, String> requiredNamespaces = LinkedHashMultimap.create();
+    /**
+     * The cost of every phase of the conversion, only set when profiling. Callers record the time
+     * spent writing the output here too, before printing it with {@link ConversionProfile#toJson}.
+     */
+    @Nullable public ConversionProfile profile = null;
   }
 }
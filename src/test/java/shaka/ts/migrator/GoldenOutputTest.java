@@ -0,0 +1,59 @@
+package shaka.ts.migrator;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Compares the conversion of synthetic corpora with golden output recorded by the converter as it
+ * was before its passes were optimized, which must not change what it generates. A deliberate
+ * change of the output has to record the golden files again.
+ *
+ * <p>A golden file holds the output of every file of the corpus, in corpus order, each preceded by
+ * a {@code ==> path <==} line. It is named after the size, fan-out, comment density and seed of
+ * its corpus.
+ */
+@RunWith(JUnit4.class)
+public final class GoldenOutputTest {
+  @Test
+  public void testSampleCorpus() throws IOException {
+    assertMatchesGolden(new SyntheticCorpus(40, 3, 0.5, 1), "corpus-40-3-0.5-1.golden");
+  }
+
+  /** Every declaration carries prose on top of its tags, which the JSDoc filter has to keep. */
+  @Test
+  public void testFullyDocumentedCorpus() throws IOException {
+    assertMatchesGolden(new SyntheticCorpus(30, 3, 1.0, 2), "corpus-30-3-1.0-2.golden");
+  }
+
+  /** Files import up to six others, so the rewrite tables grow well past their initial size. */
+  @Test
+  public void testWideCorpus() throws IOException {
+    assertMatchesGolden(new SyntheticCorpus(80, 6, 0.0, 3), "corpus-80-6-0.0-3.golden");
+  }
+
+  private static void assertMatchesGolden(SyntheticCorpus corpus, String golden)
+      throws IOException {
+    TypeScriptGenerator gents = new TypeScriptGenerator(new Options());
+    gents.setErrorStream(new PrintStream(ByteStreams.nullOutputStream()));
+    Map<String, String> sourceFileMap = gents.generateTypeScript(corpus).sourceFileMap;
+    assertWithMessage("errors converting the corpus of %s", golden)
+        .that(gents.getErrorCount())
+        .isEqualTo(0);
+    StringBuilder output = new StringBuilder();
+    for (Map.Entry<String, String> file : sourceFileMap.entrySet()) {
+      output.append("==> ").append(file.getKey()).append(" <==\n").append(file.getValue());
+    }
+    String expected =
+        Resources.toString(Resources.getResource(GoldenOutputTest.class, golden), UTF_8);
+    assertWithMessage("output of %s", golden).that(output.toString()).isEqualTo(expected);
+  }
+}
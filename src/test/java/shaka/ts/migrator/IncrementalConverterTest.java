@@ -0,0 +1,102 @@
+package shaka.ts.migrator;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.io.ByteStreams;
+import com.google.javascript.jscomp.SourceFile;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks that every incremental conversion gives the output of a full conversion of the same files,
+ * while reusing the cached output of the files a change does not affect.
+ */
+@RunWith(JUnit4.class)
+public final class IncrementalConverterTest {
+  /** Has no dependencies, so only a change to the file itself affects it. */
+  private static final String INDEPENDENT_FILE = "p0/type0.js";
+
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+
+  private final Map<String, String> files = new LinkedHashMap<>();
+  private IncrementalConverter converter;
+
+  @Before
+  public void setUp() throws Exception {
+    files.putAll(new SyntheticCorpus(30, 3, 0.5, 4).getFiles());
+    Path cacheFile = tmp.getRoot().toPath().resolve("cache.json");
+    converter = new IncrementalConverter(new Options(), cacheFile);
+  }
+
+  @Test
+  public void testRerunsMatchFullConversion() throws Exception {
+    PrintStream stderr = System.err;
+    // Silences the conversion summaries and the errors of the missing and renamed namespaces.
+    System.setErr(new PrintStream(ByteStreams.nullOutputStream()));
+    try {
+      assertMatchesFullConversion();
+      assertThat(converter.getConvertedFiles()).containsExactlyElementsIn(files.keySet());
+
+      assertMatchesFullConversion();
+      assertThat(converter.getConvertedFiles()).isEmpty();
+
+      // A change to the body of a function leaves the module metadata of the file as it was.
+      String edited = "p0/type12.js";
+      files.put(edited, files.get(edited).replace("total + 1", "total + 2"));
+      assertMatchesFullConversion();
+      assertThat(converter.getConvertedFiles()).containsExactly(edited);
+
+      // The files requiring the deleted file are converted again, without its module.
+      files.remove("p0/type1.js");
+      assertMatchesFullConversion();
+      assertThat(converter.getConvertedFiles()).isNotEmpty();
+      assertThat(converter.getConvertedFiles()).doesNotContain(INDEPENDENT_FILE);
+      assertThat(converter.getConvertedFiles().size()).isLessThan(files.size());
+
+      // So are the files requiring the namespace the independent file no longer provides.
+      String namespace = "synth.p0.Type0";
+      assertThat(files.get(INDEPENDENT_FILE)).contains("goog.provide('" + namespace + "');");
+      files.put(INDEPENDENT_FILE, files.get(INDEPENDENT_FILE).replace(namespace, "synth.p0.Zero"));
+      assertMatchesFullConversion();
+      assertThat(converter.getConvertedFiles()).contains(INDEPENDENT_FILE);
+      assertThat(converter.getConvertedFiles().size()).isGreaterThan(1);
+      assertThat(converter.getConvertedFiles().size()).isLessThan(files.size());
+    } finally {
+      System.setErr(stderr);
+    }
+  }
+
+  /** Converts the files incrementally and compares the output with a full conversion. */
+  private void assertMatchesFullConversion() throws Exception {
+    Map<String, String> incremental =
+        converter.convert(files.keySet(), getSourceFiles(), false).sourceFileMap;
+
+    TypeScriptGenerator gents = new TypeScriptGenerator(new Options());
+    gents.setErrorStream(new PrintStream(ByteStreams.nullOutputStream()));
+    Map<String, String> full =
+        gents.generateTypeScript(
+                files.keySet(), getSourceFiles(), Collections.emptyList(), false)
+            .sourceFileMap;
+
+    assertThat(incremental).containsExactlyEntriesIn(full).inOrder();
+  }
+
+  private List<SourceFile> getSourceFiles() {
+    List<SourceFile> sourceFiles = new ArrayList<>();
+    for (Map.Entry<String, String> file : files.entrySet()) {
+      sourceFiles.add(SourceFile.fromCode(file.getKey(), file.getValue()));
+    }
+    return sourceFiles;
+  }
+}
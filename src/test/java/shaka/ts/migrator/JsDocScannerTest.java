@@ -0,0 +1,142 @@
+package shaka.ts.migrator;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks {@link JsDocScanner} against the regular expressions it replaced, which are kept here as
+ * the reference implementation.
+ */
+@RunWith(JUnit4.class)
+public final class JsDocScannerTest {
+  /** Regex fragment that optionally matches the beginning of a JSDOC line. */
+  private static final String BEGIN_JSDOC_LINE = "(?<block>[ \t]*\\*[ \t]*)?";
+
+  /** Regex fragment to optionally match end-of-line */
+  private static final String EOL = "(?<eol>[ \t]*\n)?";
+
+  private static final Pattern[] JSDOC_REPLACEMENTS_WITH_KEEP = {
+    Pattern.compile(
+        BEGIN_JSDOC_LINE + "@param[ \t]*(\\{.*\\})[ \t]*[\\w\\$]+[ \t]*(?<keep>\\*\\/|\n)"),
+    Pattern.compile(BEGIN_JSDOC_LINE + "@returns?[ \t]*(\\{.*\\})[ \t]*(?<keep>\\*\\/|\n)"),
+    Pattern.compile(BEGIN_JSDOC_LINE + "(?<keep>@(param|returns?))[ \t]*(\\{.*\\})"),
+    Pattern.compile(BEGIN_JSDOC_LINE + "(?<keep>@export)[ \t]*(\\{.*\\})"),
+  };
+
+  private static final Pattern[] JSDOC_REPLACEMENTS_NO_KEEP = {
+    Pattern.compile(BEGIN_JSDOC_LINE + "@(extends|implements|type)[ \t]*(\\{[^@]*\\})[ \t]*" + EOL),
+    Pattern.compile(BEGIN_JSDOC_LINE + "@(constructor|interface|record)[ \t]*" + EOL),
+    Pattern.compile(
+        BEGIN_JSDOC_LINE
+            + "@(private|protected|public|package|const|enum)[ \t]*(\\{.*\\})?[ \t]*"
+            + EOL),
+    Pattern.compile(BEGIN_JSDOC_LINE + "@suppress[ \t]*\\{extraRequire\\}[ \t]*" + EOL),
+    Pattern.compile(BEGIN_JSDOC_LINE + "@typedef[ \t]*(\\{.*\\})" + EOL, Pattern.DOTALL)
+  };
+
+  private static final String[] FIXTURES = {
+    "/** Just a description. */",
+    "/**\n * @param {number} id\n * @constructor\n */",
+    "/**\n * Creates a thing.\n * @param {string} name The name.\n * @return {!Thing}\n */",
+    "/** @return {number} */",
+    "/** @returns {?string} the label */",
+    "/**\n * @param {{a: number, b: string}} record\n * @param {function(): void} callback\n */",
+    "/** @export {number} */",
+    "/**\n * @extends {Base}\n * @implements {Iface}\n * @record\n */",
+    "/** @private {?synth.Type.Options} */",
+    "/** @const {!Array<number>} The values. */",
+    "/**\n * @enum {string}\n */",
+    "/** @suppress {extraRequire} */",
+    "/**\n * @typedef {{\n *   id: number,\n *   kind: !synth.Kind\n * }}\n */",
+    "/**\n * @typedef {string} A named string.\n */",
+    "/** @type {number} @private */",
+    "/**\n\t*\t@param\t{number}\tx\t\n\t*/",
+    "/**\n * @param {number} x\n * @param {} y\n * @interface @protected @package\n */",
+    "/** @public @const @enum */",
+    "/** @param {number} $x_1 */",
+    "/** @param {number} {x} */",
+    "/** email@example.com {not a tag} */",
+  };
+
+  private static final String[] TOKENS = {
+    "@param", "@return", "@returns", "@export", "@extends", "@implements", "@type",
+    "@constructor", "@interface", "@record", "@private", "@protected", "@public", "@package",
+    "@const", "@enum", "@suppress", "@typedef", "{extraRequire}", "{number}", "{!Foo.Bar}",
+    "{{a: number}}", "{", "}", "@", "*", "*/", "/**", "\n", "\n * ", " ", "\t", "x", "$y",
+    "name", "Some description.", "@param {string} s\n", " * @return {number}\n",
+  };
+
+  private static final String CHARS = "@{}*/ \t\nx$_.pr";
+
+  /** The regex cascade {@link JsDocScanner#filter} replaced. */
+  private static String filterWithRegexes(String comment) {
+    for (Pattern p : JSDOC_REPLACEMENTS_WITH_KEEP) {
+      Matcher m = p.matcher(comment);
+      if (m.find() && m.group("keep") != null && m.group("keep").trim().length() > 0) {
+        comment = m.replaceAll("${block}${keep}");
+      } else {
+        comment = m.replaceAll("");
+      }
+    }
+    for (Pattern p : JSDOC_REPLACEMENTS_NO_KEEP) {
+      Matcher m = p.matcher(comment);
+      if (m.find()) {
+        if (m.group("eol") != null && m.group("eol").trim().length() == 0) {
+          comment = m.replaceAll("");
+        } else {
+          comment = p.matcher(comment).replaceAll("${block}");
+        }
+      }
+    }
+    return comment;
+  }
+
+  private static void assertSameAsRegexes(String comment) {
+    assertWithMessage("filtering %s", escape(comment))
+        .that(JsDocScanner.filter(comment))
+        .isEqualTo(filterWithRegexes(comment));
+  }
+
+  private static String escape(String s) {
+    return "\"" + s.replace("\n", "\\n").replace("\t", "\\t") + "\"";
+  }
+
+  @Test
+  public void testFixtures() {
+    for (String fixture : FIXTURES) {
+      assertSameAsRegexes(fixture);
+    }
+  }
+
+  @Test
+  public void testRandomTokenSequences() {
+    Random random = new Random(0x15c0de);
+    for (int i = 0; i < 20000; i++) {
+      StringBuilder sb = new StringBuilder();
+      int length = 1 + random.nextInt(24);
+      for (int j = 0; j < length; j++) {
+        sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+      }
+      assertSameAsRegexes(sb.toString());
+    }
+  }
+
+  @Test
+  public void testRandomCharacterSequences() {
+    Random random = new Random(42);
+    for (int i = 0; i < 20000; i++) {
+      StringBuilder sb = new StringBuilder();
+      int length = 1 + random.nextInt(40);
+      for (int j = 0; j < length; j++) {
+        sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
+      }
+      assertSameAsRegexes(sb.toString());
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package shaka.ts.migrator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.javascript.jscomp.SourceFile;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks how the command line tool names its inputs and outputs. */
+@RunWith(JUnit4.class)
+public final class MainTest {
+  @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testFilesSharingBaseNameAreAllConverted() throws Exception {
+    Path base = tmp.getRoot().toPath();
+    write(
+        base.resolve("a/foo.js"),
+        "goog.provide('a.Foo');\n\n/** @constructor */\na.Foo = function() {};\n");
+    write(
+        base.resolve("b/foo.js"),
+        "goog.provide('b.Foo');\n\n/** @constructor */\nb.Foo = function() {};\n");
+    List<InputLoader.Input> inputs =
+        new InputLoader(2).load(base, ImmutableList.of(base.resolve("a"), base.resolve("b")));
+
+    Options opts = new Options();
+    opts.root = base.toString();
+    Set<String> filesToConvert = new LinkedHashSet<>();
+    List<SourceFile> sourceFiles = new ArrayList<>();
+    Map<String, File> inputFileMap = new HashMap<>();
+    Main.addInputs(
+        inputs,
+        new PathUtil(opts.root, opts.absolutePathPrefix),
+        filesToConvert,
+        sourceFiles,
+        inputFileMap);
+    Map<String, String> output =
+        new TypeScriptGenerator(opts)
+            .generateTypeScript(filesToConvert, sourceFiles, Collections.emptyList(), false)
+            .sourceFileMap;
+
+    assertThat(output.keySet()).containsExactly("a/foo", "b/foo").inOrder();
+    assertThat(output.get("a/foo")).contains("class Foo");
+    assertThat(output.get("b/foo")).contains("class Foo");
+    assertThat(Main.getOutputFile("a/foo", inputFileMap).toString())
+        .isEqualTo(base.resolve("a/foo.ts").toString());
+    assertThat(Main.getOutputFile("b/foo", inputFileMap).toString())
+        .isEqualTo(base.resolve("b/foo.ts").toString());
+  }
+
+  private static void write(Path path, String content) throws Exception {
+    Files.createDirectories(path.getParent());
+    Files.write(path, content.getBytes(UTF_8));
+  }
+}
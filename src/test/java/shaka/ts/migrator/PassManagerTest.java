@@ -0,0 +1,93 @@
+package shaka.ts.migrator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.NodeTraversal;
+import com.google.javascript.jscomp.NodeTraversal.AbstractPostOrderCallback;
+import com.google.javascript.jscomp.SourceFile;
+import com.google.javascript.rhino.Node;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that steps run in order, each on the tree the previous steps left. */
+@RunWith(JUnit4.class)
+public final class PassManagerTest {
+  @Test
+  public void testStepSeesRewritesOfPreviousStep() {
+    Compiler compiler = new Compiler();
+    compiler.init(
+        ImmutableList.of(),
+        ImmutableList.of(SourceFile.fromCode("test.js", "var a = b; var c = a;")),
+        new CompilerOptions());
+    compiler.parse();
+    Node root = compiler.getRoot().getLastChild();
+    List<String> names = new ArrayList<>();
+
+    PassManager passManager = new PassManager(compiler);
+    passManager.add(
+        PassManager.traversal(
+            "rename",
+            new AbstractPostOrderCallback() {
+              @Override
+              public void visit(NodeTraversal t, Node n, Node parent) {
+                if (n.isName()) {
+                  n.setString(n.getString() + "_");
+                }
+              }
+            },
+            EnumSet.noneOf(PassManager.Metadata.class),
+            EnumSet.noneOf(PassManager.Metadata.class)));
+    passManager.add(
+        PassManager.traversal(
+            "collect",
+            new AbstractPostOrderCallback() {
+              @Override
+              public void visit(NodeTraversal t, Node n, Node parent) {
+                if (n.isName()) {
+                  names.add(n.getString());
+                }
+              }
+            },
+            EnumSet.noneOf(PassManager.Metadata.class),
+            EnumSet.noneOf(PassManager.Metadata.class)));
+    passManager.process(null, root);
+
+    assertThat(names).containsExactly("b_", "a_", "a_", "c_").inOrder();
+    assertThat(passManager.getReport()).contains("rename: 1 traversal,");
+    assertThat(passManager.getReport()).contains("collect: 1 traversal,");
+    assertThat(passManager.getReport()).contains("Total: 2 traversals,");
+  }
+
+  @Test
+  public void testRejectsReadOfMetadataNoStepWrites() {
+    PassManager passManager = new PassManager(new Compiler());
+    passManager.add(
+        PassManager.action(
+            "comments",
+            (externs, root) -> {},
+            () -> 0,
+            EnumSet.noneOf(PassManager.Metadata.class),
+            EnumSet.of(PassManager.Metadata.COMMENTS)));
+
+    try {
+      passManager.add(
+          PassManager.action(
+              "modules",
+              (externs, root) -> {},
+              () -> 0,
+              EnumSet.of(PassManager.Metadata.MODULE_METADATA),
+              EnumSet.noneOf(PassManager.Metadata.class)));
+      fail("Expected the step to be rejected");
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageThat().contains("MODULE_METADATA");
+    }
+  }
+}
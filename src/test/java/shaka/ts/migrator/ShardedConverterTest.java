@@ -0,0 +1,37 @@
+package shaka.ts.migrator;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.io.ByteStreams;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that converting in shards gives the same output as a single compilation. */
+@RunWith(JUnit4.class)
+public final class ShardedConverterTest {
+  @Test
+  public void testShardedOutputMatchesUnsharded() {
+    SyntheticCorpus corpus = new SyntheticCorpus(60, 3, 0.5, 11);
+    TypeScriptGenerator gents = new TypeScriptGenerator(new Options());
+    gents.setErrorStream(new PrintStream(ByteStreams.nullOutputStream()));
+    Map<String, String> unsharded = gents.generateTypeScript(corpus).sourceFileMap;
+    assertThat(gents.getErrorCount()).isEqualTo(0);
+
+    Options opts = new Options();
+    opts.shards = 4;
+    ShardedConverter converter = new ShardedConverter(opts);
+    converter.setErrorStream(new PrintStream(ByteStreams.nullOutputStream()));
+    Map<String, String> sharded =
+        converter
+            .convert(
+                corpus.getFileNames(), corpus.getSourceFiles(), Collections.emptyList(), false)
+            .sourceFileMap;
+    assertThat(converter.getErrorCount()).isEqualTo(0);
+
+    assertThat(sharded).containsExactlyEntriesIn(unsharded).inOrder();
+  }
+}
@@ -0,0 +1,131 @@
+package shaka.ts.migrator;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ForwardingMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.javascript.jscomp.SourceFile;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that converting on several threads gives the same result as converting serially. */
+@RunWith(JUnit4.class)
+public final class TypeScriptGeneratorTest {
+  private static final int THREADS = 4;
+
+  /** Output and errors of a conversion. */
+  private static final class Conversion {
+    final Map<String, String> sourceFileMap;
+    final String errors;
+
+    Conversion(Map<String, String> sourceFileMap, String errors) {
+      this.sourceFileMap = sourceFileMap;
+      this.errors = errors;
+    }
+  }
+
+  @Test
+  public void testThreadsDoNotChangeOutput() {
+    SyntheticCorpus corpus = new SyntheticCorpus(40, 3, 0.5, 5);
+    Conversion serial = convert(corpus, new Options(), 1);
+    Conversion parallel = convert(corpus, new Options(), THREADS);
+
+    assertThat(parallel.sourceFileMap).containsExactlyEntriesIn(serial.sourceFileMap).inOrder();
+    assertThat(parallel.errors).isEqualTo(serial.errors);
+  }
+
+  /**
+   * Every declaration has a comment, which {@link CommentLinkingPass} links on as many threads as
+   * the printer uses.
+   */
+  @Test
+  public void testThreadsDoNotChangeLinkedComments() {
+    SyntheticCorpus corpus = new SyntheticCorpus(30, 3, 1.0, 6);
+    Conversion serial = convert(corpus, new Options(), 1);
+    Conversion parallel = convert(corpus, new Options(), THREADS);
+
+    assertThat(serial.sourceFileMap.get("p0/type0")).contains("//");
+    assertThat(parallel.sourceFileMap).containsExactlyEntriesIn(serial.sourceFileMap).inOrder();
+    assertThat(parallel.errors).isEqualTo(serial.errors);
+  }
+
+  /** Files that fail to print are reported in source order, whichever thread printed them. */
+  @Test
+  public void testThreadsDoNotChangeReportedFailures() {
+    SyntheticCorpus corpus = new SyntheticCorpus(40, 3, 0.5, 5);
+    Conversion serial = convert(corpus, failingOnAnyType(), 1);
+    Conversion parallel = convert(corpus, failingOnAnyType(), THREADS);
+
+    assertThat(serial.errors).contains("bad/any0.js");
+    assertThat(serial.errors).contains("bad/any1.js");
+    assertThat(serial.sourceFileMap).doesNotContainKey("bad/any0");
+    assertThat(serial.sourceFileMap).doesNotContainKey("bad/any1");
+    assertThat(parallel.sourceFileMap).containsExactlyEntriesIn(serial.sourceFileMap).inOrder();
+    assertThat(parallel.errors).isEqualTo(serial.errors);
+  }
+
+  /**
+   * Converts the corpus plus two files typed with {@code *}, which only fail to print with {@link
+   * #failingOnAnyType}.
+   */
+  private static Conversion convert(SyntheticCorpus corpus, Options opts, int threads) {
+    opts.threads = threads;
+    Set<String> fileNames = corpus.getFileNames();
+    List<SourceFile> sourceFiles = corpus.getSourceFiles();
+    for (int i = 0; i < 2; i++) {
+      String name = "bad/any" + i + ".js";
+      fileNames.add(name);
+      sourceFiles.add(
+          SourceFile.fromCode(
+              name,
+              "goog.provide('bad.any" + i + "');\n\n"
+                  + "/** @param {*} x */\n"
+                  + ("bad.any" + i + ".f = function(x) {};\n")));
+    }
+    ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    TypeScriptGenerator gents = new TypeScriptGenerator(opts);
+    gents.setErrorStream(new PrintStream(errors, true));
+    PrintStream stderr = System.err;
+    // The stack traces of failures differ between threads, and are not what is compared.
+    System.setErr(new PrintStream(ByteStreams.nullOutputStream()));
+    Map<String, String> sourceFileMap;
+    try {
+      sourceFileMap =
+          gents.generateTypeScript(fileNames, sourceFiles, Collections.emptyList(), false)
+              .sourceFileMap;
+    } finally {
+      System.setErr(stderr);
+    }
+    return new Conversion(sourceFileMap, new String(errors.toByteArray(), UTF_8));
+  }
+
+  /** Returns options whose externs map throws when the printer looks up the alias of "any". */
+  private static Options failingOnAnyType() {
+    Options opts = new Options();
+    opts.externsMap =
+        new ForwardingMap<String, String>() {
+          @Override
+          protected Map<String, String> delegate() {
+            return ImmutableMap.of();
+          }
+
+          @Override
+          public String get(Object key) {
+            if ("any".equals(key)) {
+              throw new IllegalStateException("No alias for any");
+            }
+            return super.get(key);
+          }
+        };
+    return opts;
+  }
+}